@@ -0,0 +1,15 @@
+package mvp;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the constructor the generated factory creates a presenter with.  Each parameter is asked for from the generated
+ * PresenterDependencies interface, which the app implements and passes to the factory.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.CONSTRUCTOR)
+public @interface Inject {
+}
@@ -1,4 +1,14 @@
 package mvp;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Kept in the class file so an incremental build can hand unchanged presenters back to the factory processor as classes
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
 public @interface Presenter {
 }
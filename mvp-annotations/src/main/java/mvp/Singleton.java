@@ -0,0 +1,14 @@
+package mvp;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a dependency the generated factory only asks PresenterDependencies for once, every presenter then shares it
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Singleton {
+}
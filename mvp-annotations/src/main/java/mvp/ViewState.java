@@ -0,0 +1,20 @@
+package mvp;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an interface whose no argument methods are the fields of a screen's state, title() or getTitle() say.  An immutable
+ * implementation is generated, and a differ that calls the view's setter, setTitle, for only the fields that changed.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface ViewState {
+
+  /**
+   * The view the state is shown on, it needs a setter taking each field
+   */
+  Class<?> value();
+}
@@ -0,0 +1,118 @@
+package mvp.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mvp.MVPView;
+import mvp.presenter.AbstractPresenter;
+import mvp.presenter.LifecycleMask;
+import mvp.presenter.Presenter;
+import mvp.presenter.PresenterFactory;
+import mvp.presenter.PresenterLifecycleListener;
+import mvp.presenter.PresenterLifecycleMasks;
+import mvp.presenter.PresenterServiceImpl;
+import rx.Observable;
+
+/**
+ * Views and presenters that do nothing, so the benchmarks measure the service rather than the app
+ */
+final class BenchmarkPresenters {
+  //each activity in a populated service gets this many fragments
+  static final int CHILDREN_PER_PARENT = 9;
+
+  private BenchmarkPresenters() {
+  }
+
+  static PresenterServiceImpl newService() {
+    return new PresenterServiceImpl(new StubPresenterFactory());
+  }
+
+  /**
+   * @param skipEmptyCallbacks - whether the factory reports the stub presenters' lifecycle callbacks as empty, as the
+   * generated one would
+   */
+  static PresenterServiceImpl newService(boolean skipEmptyCallbacks) {
+    return new PresenterServiceImpl(skipEmptyCallbacks ? new MaskedStubPresenterFactory() : new StubPresenterFactory());
+  }
+
+  /**
+   * @return the activity views bound to the service, which holds presenterCount presenters between them and their fragments
+   */
+  static List<StubView> populate(PresenterServiceImpl service, int presenterCount) {
+    List<StubView> parents = new ArrayList<>();
+    int bound = 0;
+    while (bound < presenterCount) {
+      StubView parent = new StubView();
+      service.takeView(parent, null);
+      parents.add(parent);
+      bound++;
+      for (int i = 0; i < CHILDREN_PER_PARENT && bound < presenterCount; i++) {
+        service.takeChild(new StubView());
+        bound++;
+      }
+    }
+    return parents;
+  }
+
+  static final class StubView implements MVPView {
+    PresenterLifecycleListener listener;
+
+    @Override
+    public <T> Observable.Transformer<T, T> getLifecycleBinder() {
+      return null;
+    }
+
+    @Override
+    public void showNoNetworkConnection() {
+    }
+
+    @Override
+    public void hideNoNetworkConnection() {
+    }
+
+    @Override
+    public void setLifecycleListener(PresenterLifecycleListener presenterLifecycleListener) {
+      listener = presenterLifecycleListener;
+    }
+  }
+
+  static final class StubPresenter extends AbstractPresenter<StubView> {
+    @Override
+    public void onResume() {
+    }
+
+    @Override
+    public void onPause() {
+    }
+
+    @Override
+    public void onViewReady() {
+    }
+
+    @Override
+    public void onDropView() {
+    }
+
+    @Override
+    public void onTakeView() {
+    }
+
+    @Override
+    public void destroy() {
+    }
+  }
+
+  static class StubPresenterFactory implements PresenterFactory {
+    @Override
+    public Presenter createPresenter(MVPView view) {
+      return new StubPresenter();
+    }
+  }
+
+  static final class MaskedStubPresenterFactory extends StubPresenterFactory implements PresenterLifecycleMasks {
+    @Override
+    public int getLifecycleMask(Class<? extends Presenter> presenterType) {
+      return presenterType == StubPresenter.class ? LifecycleMask.NONE : LifecycleMask.UNKNOWN;
+    }
+  }
+}
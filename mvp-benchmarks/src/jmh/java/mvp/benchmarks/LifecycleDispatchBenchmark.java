@@ -0,0 +1,51 @@
+package mvp.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import mvp.benchmarks.BenchmarkPresenters.StubView;
+import mvp.presenter.PresenterLifecycleListener;
+import mvp.presenter.PresenterServiceImpl;
+
+/**
+ * Lifecycle callbacks forwarded by a view through its {@link PresenterLifecycleListener}, the path every onResume and onPause
+ * takes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class LifecycleDispatchBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  int registrySize;
+
+  PresenterLifecycleListener listener;
+
+  @Setup
+  public void setup() {
+    PresenterServiceImpl service = BenchmarkPresenters.newService();
+    BenchmarkPresenters.populate(service, registrySize);
+    StubView view = new StubView();
+    service.takeChild(view);
+    listener = view.listener;
+  }
+
+  @Benchmark
+  public void resumeAndPause() {
+    listener.onResume();
+    listener.onPause();
+  }
+
+  @Benchmark
+  public void viewReady() {
+    listener.onViewReady();
+  }
+}
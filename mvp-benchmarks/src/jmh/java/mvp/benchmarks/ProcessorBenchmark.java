@@ -0,0 +1,208 @@
+package mvp.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Build time of a synthetic app with presenterCount presenters, each with a screen implementing its view, annotation
+ * processing included.  fullBuild compiles everything, which is what any change cost while a single processor generated the
+ * whole factory.  changeOnePresenter is the incremental build Gradle does now after one presenter is edited: only that
+ * presenter is compiled, the other presenters are handed back as classes so the factory processor can list them, and their
+ * providers and the screens are left alone.
+ *
+ * Needs to run on a JDK, it uses the system compiler.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class ProcessorBenchmark {
+  private static final String PACKAGE_NAME = "synthetic";
+  private static final String PROCESSORS = "mvp.compiler.PresenterProviderProcessor,mvp.compiler.MVPAnnotationProcessor";
+
+  @Param({"1000", "3000"})
+  int presenterCount;
+
+  JavaCompiler compiler;
+  File root;
+  List<File> sources;
+  List<String> presenterNames;
+  //output of a full build, the classpath of an incremental one
+  File previousBuild;
+  File output;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      throw new IllegalStateException("no system compiler, run on a JDK");
+    }
+    root = createTempDirectory();
+    File sourceDirectory = new File(root, "src/" + PACKAGE_NAME);
+    if (!sourceDirectory.mkdirs()) {
+      throw new IOException("couldn't create " + sourceDirectory);
+    }
+    sources = new ArrayList<>();
+    presenterNames = new ArrayList<>();
+    for (int i = 0; i < presenterCount; i++) {
+      sources.add(writePresenter(sourceDirectory, i, 0));
+      presenterNames.add(PACKAGE_NAME + ".Presenter" + i);
+      sources.add(writeScreen(sourceDirectory, i));
+    }
+    previousBuild = new File(root, "previous");
+    compile(previousBuild, Collections.<String>emptyList(), sources, Collections.<String>emptyList());
+    //the edit, a change to the body of the first presenter
+    writePresenter(sourceDirectory, 0, 1);
+  }
+
+  @Setup(Level.Invocation)
+  public void createOutput() throws IOException {
+    output = createTempDirectory();
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteOutput() {
+    delete(output);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    delete(root);
+  }
+
+  @Benchmark
+  public File fullBuild() throws IOException {
+    compile(output, Collections.<String>emptyList(), sources, Collections.<String>emptyList());
+    return output;
+  }
+
+  @Benchmark
+  public File changeOnePresenter() throws IOException {
+    List<String> classpath = Collections.singletonList(new File(previousBuild, "classes").getPath());
+    compile(output, classpath, sources.subList(0, 1), presenterNames.subList(1, presenterNames.size()));
+    return output;
+  }
+
+  private void compile(File output, List<String> classpath, List<File> sourceFiles, List<String> classNames) throws IOException {
+    File classes = new File(output, "classes");
+    File generated = new File(output, "generated");
+    if (!classes.mkdirs() || !generated.mkdirs()) {
+      throw new IOException("couldn't create " + output);
+    }
+    StringBuilder path = new StringBuilder(System.getProperty("java.class.path"));
+    for (String entry : classpath) {
+      path.append(File.pathSeparator).append(entry);
+    }
+    List<String> options = Arrays.asList("-nowarn", "-processor", PROCESSORS, "-cp", path.toString(),
+        "-d", classes.getPath(), "-s", generated.getPath());
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+    try {
+      Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(sourceFiles);
+      if (!compiler.getTask(null, fileManager, diagnostics, options, classNames.isEmpty() ? null : classNames, units).call()) {
+        throw new IllegalStateException("synthetic build failed " + diagnostics.getDiagnostics());
+      }
+    } finally {
+      fileManager.close();
+    }
+  }
+
+  private static File writePresenter(File directory, int index, int revision) throws IOException {
+    String name = "Presenter" + index;
+    File file = new File(directory, name + ".java");
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      writer.write("package " + PACKAGE_NAME + ";\n\n"
+          + "@mvp.Presenter\n"
+          + "public class " + name + " extends mvp.presenter.AbstractPresenter<" + name + ".View> {\n"
+          + "  public interface View extends mvp.MVPView {\n"
+          + "  }\n\n"
+          + "  int revision = " + revision + ";\n\n"
+          + "  @Override public void onTakeView() {}\n"
+          + "  @Override public void onDropView() {}\n"
+          + "  @Override public void destroy() {}\n"
+          + "  @Override public void onResume() {}\n"
+          + "  @Override public void onPause() {}\n"
+          + "  @Override public void onViewReady() {}\n"
+          + "}\n");
+    } finally {
+      writer.close();
+    }
+    return file;
+  }
+
+  private static File writeScreen(File directory, int index) throws IOException {
+    String name = "Screen" + index;
+    File file = new File(directory, name + ".java");
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      writer.write("package " + PACKAGE_NAME + ";\n\n"
+          + "public class " + name + " implements Presenter" + index + ".View {\n"
+          + "  private mvp.presenter.PresenterLifecycleListener listener;\n"
+          + "  private final java.util.List<String> items = new java.util.ArrayList<>();\n\n"
+          + "  @Override public <T> rx.Observable.Transformer<T, T> getLifecycleBinder() { return null; }\n"
+          + "  @Override public void showNoNetworkConnection() { items.clear(); }\n"
+          + "  @Override public void hideNoNetworkConnection() { items.add(\"" + name + "\"); }\n"
+          + "  @Override public void setLifecycleListener(mvp.presenter.PresenterLifecycleListener listener) {\n"
+          + "    this.listener = listener;\n"
+          + "  }\n\n"
+          + "  public String describe() {\n"
+          + "    StringBuilder builder = new StringBuilder();\n"
+          + "    for (String item : items) {\n"
+          + "      builder.append(item.trim()).append(',');\n"
+          + "    }\n"
+          + "    return builder.toString();\n"
+          + "  }\n"
+          + "}\n");
+    } finally {
+      writer.close();
+    }
+    return file;
+  }
+
+  private static File createTempDirectory() throws IOException {
+    File directory = File.createTempFile("mvp-processor", "");
+    if (!directory.delete() || !directory.mkdir()) {
+      throw new IOException("couldn't create " + directory);
+    }
+    return directory;
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,81 @@
+package mvp.benchmarks;
+
+import android.os.Bundle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import mvp.benchmarks.BenchmarkPresenters.StubView;
+import mvp.presenter.PresenterServiceImpl;
+
+/**
+ * A configuration change of an activity with two fragments: save, drop retaining the activity's presenter, then rebind new
+ * views through the saved Bundle and resume.  The fragments' presenters are recreated as they always are.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class RotationBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  int registrySize;
+
+  PresenterServiceImpl service;
+  Bundle bundle;
+  StubView activity;
+  StubView fragment1;
+  StubView fragment2;
+  StubView retainedOnly;
+
+  @Setup
+  public void setup() {
+    service = BenchmarkPresenters.newService();
+    BenchmarkPresenters.populate(service, registrySize);
+    bundle = new Bundle();
+    activity = new StubView();
+    fragment1 = new StubView();
+    fragment2 = new StubView();
+    service.takeView(activity, null);
+    service.takeChild(fragment1);
+    service.takeChild(fragment2);
+    retainedOnly = new StubView();
+    service.takeView(retainedOnly, null);
+  }
+
+  @Benchmark
+  public void rotate() {
+    bundle.clear();
+    activity.listener.onPause();
+    activity.listener.onSaveInstanceState(bundle);
+    //fragments go with the old activity, the activity's presenter is retained
+    fragment1.listener.onDestroy();
+    fragment2.listener.onDestroy();
+    activity.listener.onDestroy(true);
+
+    service.takeView(activity, bundle);
+    service.takeChild(fragment1);
+    service.takeChild(fragment2);
+    activity.listener.onResume();
+  }
+
+  /**
+   * Just the retained presenter being rebound, this should not allocate beyond what Bundle does to box the saved handle
+   */
+  @Benchmark
+  public void rotateRetained() {
+    retainedOnly.listener.onPause();
+    retainedOnly.listener.onSaveInstanceState(bundle);
+    retainedOnly.listener.onDestroy(true);
+
+    service.takeView(retainedOnly, bundle);
+    retainedOnly.listener.onResume();
+  }
+}
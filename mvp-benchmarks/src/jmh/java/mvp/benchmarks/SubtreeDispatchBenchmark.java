@@ -0,0 +1,51 @@
+package mvp.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import mvp.benchmarks.BenchmarkPresenters.StubView;
+import mvp.presenter.PresenterCallback;
+import mvp.presenter.PresenterServiceImpl;
+
+/**
+ * Resume and pause reaching a screen of childCount fragments whose presenters leave both callbacks empty, with and without
+ * the factory reporting them so the service can skip the calls.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class SubtreeDispatchBenchmark {
+
+  @Param({"10", "50"})
+  int childCount;
+
+  @Param({"false", "true"})
+  boolean skipEmptyCallbacks;
+
+  PresenterServiceImpl service;
+  StubView parent;
+
+  @Setup
+  public void setup() {
+    service = BenchmarkPresenters.newService(skipEmptyCallbacks);
+    parent = new StubView();
+    service.takeView(parent, null);
+    for (int i = 0; i < childCount; i++) {
+      service.takeChild(new StubView());
+    }
+  }
+
+  @Benchmark
+  public void resumeAndPause() {
+    service.dispatchToSubtree(parent, PresenterCallback.RESUME);
+    service.dispatchToSubtree(parent, PresenterCallback.PAUSE);
+  }
+}
@@ -0,0 +1,54 @@
+package mvp.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import mvp.benchmarks.BenchmarkPresenters.StubView;
+import mvp.presenter.PresenterServiceImpl;
+
+/**
+ * Binding a new activity or fragment against a registry that already holds registrySize presenters.  Each binding is
+ * destroyed again straight away so the registry stays the same size, the score covers both.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class TakeViewBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  int registrySize;
+
+  PresenterServiceImpl service;
+  StubView parent;
+  StubView view;
+
+  @Setup
+  public void setup() {
+    service = BenchmarkPresenters.newService();
+    BenchmarkPresenters.populate(service, registrySize);
+    parent = new StubView();
+    service.takeView(parent, null);
+    view = new StubView();
+  }
+
+  @Benchmark
+  public void takeView() {
+    service.takeView(view, null);
+    view.listener.onDestroy(false);
+  }
+
+  //bound under the same activity every time
+  @Benchmark
+  public void takeChild() {
+    service.takeChild(view);
+    view.listener.onDestroy();
+  }
+}
@@ -0,0 +1,51 @@
+package mvp.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import mvp.benchmarks.BenchmarkPresenters.StubView;
+import mvp.presenter.PresenterServiceImpl;
+
+/**
+ * Finishing every activity in a registry of registrySize presenters, which destroys them along with their fragments.  Each
+ * measurement is one complete teardown of a freshly populated registry.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 50)
+@State(Scope.Thread)
+public class TeardownBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  int registrySize;
+
+  PresenterServiceImpl service;
+  List<StubView> parents;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    service = BenchmarkPresenters.newService();
+    parents = BenchmarkPresenters.populate(service, registrySize);
+  }
+
+  @Benchmark
+  public PresenterServiceImpl teardown() {
+    for (int i = 0; i < parents.size(); i++) {
+      parents.get(i).listener.onDestroy(false);
+    }
+    return service;
+  }
+}
@@ -0,0 +1,50 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plain JVM stand in for the framework Bundle, only what the presenter service uses
+ */
+public final class Bundle {
+  private final Map<String, Object> values = new HashMap<>();
+
+  public boolean containsKey(String key) {
+    return values.containsKey(key);
+  }
+
+  public void remove(String key) {
+    values.remove(key);
+  }
+
+  public void clear() {
+    values.clear();
+  }
+
+  public void putLong(String key, long value) {
+    values.put(key, value);
+  }
+
+  public long getLong(String key) {
+    Object value = values.get(key);
+    return value instanceof Long ? (Long) value : 0L;
+  }
+
+  public void putString(String key, String value) {
+    values.put(key, value);
+  }
+
+  public String getString(String key) {
+    Object value = values.get(key);
+    return value instanceof String ? (String) value : null;
+  }
+
+  public void putByteArray(String key, byte[] value) {
+    values.put(key, value);
+  }
+
+  public byte[] getByteArray(String key) {
+    Object value = values.get(key);
+    return value instanceof byte[] ? (byte[]) value : null;
+  }
+}
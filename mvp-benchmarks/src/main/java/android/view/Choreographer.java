@@ -0,0 +1,20 @@
+package android.view;
+
+/**
+ * Plain JVM stand in for the framework Choreographer, there are no frames so callbacks run straight away
+ */
+public final class Choreographer {
+  private static final Choreographer INSTANCE = new Choreographer();
+
+  public interface FrameCallback {
+    void doFrame(long frameTimeNanos);
+  }
+
+  public static Choreographer getInstance() {
+    return INSTANCE;
+  }
+
+  public void postFrameCallback(FrameCallback callback) {
+    callback.doFrame(System.nanoTime());
+  }
+}
@@ -0,0 +1,180 @@
+package mvp.compiler;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+
+import mvp.Singleton;
+
+/**
+ * Every type the presenters of a module are constructed with.  Each gets a method on the generated PresenterDependencies
+ * interface the app implements, and the factory calls it whenever a presenter needs one, or only the once for a type
+ * annotated with @Singleton.
+ */
+public class Dependencies {
+  static final String INTERFACE_NAME = "PresenterDependencies";
+  static final String FIELD_NAME = "dependencies";
+
+  private final Types typeUtils;
+  private final ClassName interfaceName;
+  //by type name so the generated methods come out in the same order every build
+  private final Map<String, Dependency> dependencies = new TreeMap<>();
+
+  public Dependencies(Types typeUtils, String packageName, List<PresenterAnnotatedClass> classes) {
+    this.typeUtils = typeUtils;
+    interfaceName = ClassName.get(packageName, INTERFACE_NAME);
+    for (PresenterAnnotatedClass clazz : classes) {
+      for (VariableElement parameter : clazz.getDependencies()) {
+        TypeName type = TypeName.get(parameter.asType());
+        if (!dependencies.containsKey(type.toString())) {
+          dependencies.put(type.toString(), new Dependency(type, isSingleton(parameter.asType())));
+        }
+      }
+    }
+    Set<String> names = new HashSet<>();
+    //singletons are cached in a field named after them, which mustn't clash with the factory's own
+    names.add(FIELD_NAME);
+    for (Dependency dependency : dependencies.values()) {
+      String name = methodName(dependency.type);
+      String unique = name;
+      for (int i = 2; !names.add(unique); i++) {
+        unique = name + i;
+      }
+      dependency.name = unique;
+    }
+  }
+
+  public boolean isEmpty() {
+    return dependencies.isEmpty();
+  }
+
+  public ClassName getInterfaceName() {
+    return interfaceName;
+  }
+
+  /**
+   * @return the expression the factory gets the dependency with
+   */
+  public CodeBlock get(TypeMirror type) {
+    Dependency dependency = dependencies.get(TypeName.get(type).toString());
+    if (dependency.singleton) {
+      return CodeBlock.builder().add("$L()", dependency.name).build();
+    }
+    return CodeBlock.builder().add("$L.get$L()", FIELD_NAME, capitalize(dependency.name)).build();
+  }
+
+  public TypeSpec generateInterface(Iterable<? extends Element> originatingElements) {
+    TypeSpec.Builder builder = TypeSpec.interfaceBuilder(interfaceName.simpleName())
+        .addModifiers(Modifier.PUBLIC)
+        .addJavadoc("Auto generated class, implemented by the app to give presenters what they are constructed with\n");
+    for (Element element : originatingElements) {
+      builder.addOriginatingElement(element);
+    }
+    for (Dependency dependency : dependencies.values()) {
+      builder.addMethod(MethodSpec.methodBuilder("get" + capitalize(dependency.name))
+          .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+          .returns(dependency.type)
+          .build());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Adds the field holding the app's dependencies, a constructor taking them, and a cached getter for each singleton
+   */
+  public void generateFactoryMembers(TypeSpec.Builder factoryBuilder) {
+    factoryBuilder.addField(interfaceName, FIELD_NAME, Modifier.PRIVATE, Modifier.FINAL);
+    factoryBuilder.addMethod(MethodSpec.constructorBuilder()
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(interfaceName, FIELD_NAME, Modifier.FINAL)
+        .beginControlFlow("if ($L == null)", FIELD_NAME)
+        .addStatement("throw new $T(\"dependencies must not be null\")", NullPointerException.class)
+        .endControlFlow()
+        .addStatement("this.$L = $L", FIELD_NAME, FIELD_NAME)
+        .build());
+    for (Dependency dependency : dependencies.values()) {
+      if (!dependency.singleton) {
+        continue;
+      }
+      factoryBuilder.addField(FieldSpec.builder(dependency.type, dependency.name, Modifier.PRIVATE, Modifier.VOLATILE).build());
+      factoryBuilder.addMethod(MethodSpec.methodBuilder(dependency.name)
+          .addModifiers(Modifier.PRIVATE)
+          .returns(dependency.type)
+          .addStatement("$T instance = $L", dependency.type, dependency.name)
+          .beginControlFlow("if (instance == null)")
+          .beginControlFlow("synchronized (this)")
+          .addStatement("instance = $L", dependency.name)
+          .beginControlFlow("if (instance == null)")
+          .addStatement("instance = $L.get$L()", FIELD_NAME, capitalize(dependency.name))
+          .addStatement("$L = instance", dependency.name)
+          .endControlFlow()
+          .endControlFlow()
+          .endControlFlow()
+          .addStatement("return instance")
+          .build());
+    }
+  }
+
+  private boolean isSingleton(TypeMirror type) {
+    Element element = typeUtils.asElement(type);
+    return element != null && element.getAnnotation(Singleton.class) != null;
+  }
+
+  /**
+   * userRepository for UserRepository, listOfString for List&lt;String&gt;
+   */
+  private static String methodName(TypeName type) {
+    return decapitalize(simpleName(type));
+  }
+
+  private static String simpleName(TypeName type) {
+    if (type instanceof ClassName) {
+      return ((ClassName) type).simpleName();
+    }
+    if (type instanceof ParameterizedTypeName) {
+      ParameterizedTypeName parameterized = (ParameterizedTypeName) type;
+      StringBuilder name = new StringBuilder(parameterized.rawType.simpleName());
+      for (int i = 0; i < parameterized.typeArguments.size(); i++) {
+        name.append(i == 0 ? "Of" : "And").append(simpleName(parameterized.typeArguments.get(i)));
+      }
+      return name.toString();
+    }
+    //wildcards and type variables
+    return "Value";
+  }
+
+  private static String capitalize(String name) {
+    return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+  }
+
+  private static String decapitalize(String name) {
+    return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+  }
+
+  private static final class Dependency {
+    final TypeName type;
+    final boolean singleton;
+    String name;
+
+    Dependency(TypeName type, boolean singleton) {
+      this.type = type;
+      this.singleton = singleton;
+    }
+  }
+}
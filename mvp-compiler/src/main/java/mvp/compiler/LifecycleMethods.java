@@ -0,0 +1,79 @@
+package mvp.compiler;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.util.Trees;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Works out which of onViewReady, onResume and onPause a presenter does something in, from the bodies of the methods it
+ * inherits.  Only an implementation with no statements at all is left out, one the compiler can't see the source of,
+ * compiled in another module say, is assumed to do something.
+ */
+public final class LifecycleMethods {
+  static final ClassName LIFECYCLE_MASK = ClassName.get("mvp.presenter", "LifecycleMask");
+
+  private static final String[] METHOD_NAMES = {"onViewReady", "onResume", "onPause"};
+  //the LifecycleMask constant for each method
+  private static final String[] MASK_NAMES = {"VIEW_READY", "RESUME", "PAUSE"};
+
+  private LifecycleMethods() {
+  }
+
+  /**
+   * @param trees - null when not running in javac, every callback is then made
+   * @return the LifecycleMask expression for the presenter, NONE or its constants or'd together
+   */
+  public static CodeBlock mask(TypeElement presenter, Trees trees) {
+    CodeBlock.Builder mask = CodeBlock.builder();
+    boolean empty = true;
+    for (int i = 0; i < METHOD_NAMES.length; i++) {
+      if (trees != null && isEmpty(findImplementation(presenter, METHOD_NAMES[i]), trees)) {
+        continue;
+      }
+      mask.add(empty ? "$T.$L" : " | $T.$L", LIFECYCLE_MASK, MASK_NAMES[i]);
+      empty = false;
+    }
+    if (empty) {
+      mask.add("$T.NONE", LIFECYCLE_MASK);
+    }
+    return mask.build();
+  }
+
+  /**
+   * @return the closest non abstract, no argument method with the name, or null
+   */
+  private static ExecutableElement findImplementation(TypeElement type, String name) {
+    while (type != null) {
+      for (Element enclosed : type.getEnclosedElements()) {
+        if (enclosed.getKind() != ElementKind.METHOD || !enclosed.getSimpleName().contentEquals(name)) {
+          continue;
+        }
+        ExecutableElement method = (ExecutableElement) enclosed;
+        if (method.getParameters().isEmpty() && !method.getModifiers().contains(Modifier.ABSTRACT)) {
+          return method;
+        }
+      }
+      TypeMirror superclass = type.getSuperclass();
+      type = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+    return null;
+  }
+
+  private static boolean isEmpty(ExecutableElement method, Trees trees) {
+    if (method == null) {
+      return false;
+    }
+    MethodTree tree = trees.getTree(method);
+    return tree != null && tree.getBody() != null && tree.getBody().getStatements().isEmpty();
+  }
+}
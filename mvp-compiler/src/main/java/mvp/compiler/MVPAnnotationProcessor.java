@@ -1,22 +1,28 @@
 package mvp.compiler;
 
-import com.google.auto.service.AutoService;
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.Filer;
 import javax.annotation.processing.Messager;
 import javax.annotation.processing.ProcessingEnvironment;
-import javax.annotation.processing.Processor;
 import javax.annotation.processing.RoundEnvironment;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
@@ -27,17 +33,34 @@ import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
 
+import mvp.Inject;
 import mvp.Presenter;
+import mvp.Singleton;
 import mvp.compiler.PresenterAnnotatedClass;
 
 import static java.util.Collections.singleton;
 
-@AutoService(Processor.class)
+/**
+ * Writes the PresenterFactoryImpl listing every presenter's provider, which {@link PresenterProviderProcessor} writes.  The
+ * factory depends on all the presenters so this is an aggregating processor to Gradle, it is rerun over every presenter
+ * when one changes but only reads their names and view types, the work per presenter is in the providers.
+ *
+ * Every module with presenters gets its own factory, so each has to be told a package to put it in with the
+ * {@value #FACTORY_PACKAGE_OPTION} option.  Without it the factory goes in the package single module apps have always used.
+ *
+ * It claims @Presenter, @Inject and @Singleton, so it is listed after the other processors in META-INF/services, javac only
+ * hands claimed annotations to the processors before the one that claimed them.
+ */
 public class MVPAnnotationProcessor extends AbstractProcessor {
 
+  static final String FACTORY_PACKAGE_OPTION = "mvp.factoryPackage";
   private static final String PACKAGE_NAME = "com.joincoup.app.mvp.presenter";
   private static final String FACTORY_METHOD_NAME = "createPresenter";
+  private static final String TYPE_FACTORY_METHOD_NAME = "createPresenterForType";
+  private static final String INDEX_FACTORY_METHOD_NAME = "createPresenterAt";
   private static final String FACTORY_CLASS_NAME = "PresenterFactoryImpl";
+  private static final String VIEW_TYPES_FIELD_NAME = "VIEW_TYPES";
+  private static final String LIFECYCLE_MASKS_FIELD_NAME = "LIFECYCLE_MASKS";
 
   private Types typeUtils;
   private Elements elementUtils;
@@ -56,7 +79,14 @@ public class MVPAnnotationProcessor extends AbstractProcessor {
 
   @Override
   public Set<String> getSupportedAnnotationTypes() {
-    return singleton(Presenter.class.getCanonicalName());
+    //@Inject and @Singleton are read while writing the factory's dependencies
+    return new HashSet<>(Arrays.asList(Presenter.class.getCanonicalName(), Inject.class.getCanonicalName(),
+        Singleton.class.getCanonicalName()));
+  }
+
+  @Override
+  public Set<String> getSupportedOptions() {
+    return singleton(FACTORY_PACKAGE_OPTION);
   }
 
   @Override
@@ -84,7 +114,7 @@ public class MVPAnnotationProcessor extends AbstractProcessor {
 
         presenterAnnotatedClasses.add(annotatedClass);
       } catch (ProcessingException e) {
-        error(annotatedElement, "MVP processing exception " + e.getMessage());
+        //already reported by the provider processor, which has no provider for it to list
       }
     }
 
@@ -99,29 +129,115 @@ public class MVPAnnotationProcessor extends AbstractProcessor {
       return;
     }
 
-    ClassName factory = ClassName.get("mvp.presenter", "PresenterFactory");
+    String packageName = processingEnv.getOptions().get(FACTORY_PACKAGE_OPTION);
+    if (packageName == null) {
+      packageName = PACKAGE_NAME;
+    }
+    ClassName factory = ClassName.get("mvp.presenter", "PresenterModuleFactory");
     TypeSpec.Builder factoryBuilder = TypeSpec.classBuilder(FACTORY_CLASS_NAME)
         .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
         .addJavadoc("Auto generated class")
-        .addSuperinterface(factory);
+        .addSuperinterface(factory)
+        .addSuperinterface(ClassName.get("mvp.presenter", "PresenterLifecycleMasks"));
+
+    //sorted so the generated source doesn't change between builds
+    List<PresenterAnnotatedClass> classes = new ArrayList<>(presenterAnnotatedClasses);
+    Collections.sort(classes, new Comparator<PresenterAnnotatedClass>() {
+      @Override
+      public int compare(PresenterAnnotatedClass lhs, PresenterAnnotatedClass rhs) {
+        return lhs.getQualifiedName().toString().compareTo(rhs.getQualifiedName().toString());
+      }
+    });
+    try {
+      Validator.checkDistinctViews(typeUtils, classes);
+    } catch (ProcessingException e) {
+      error(e.getElement(), "MVP processing exception " + e.getMessage());
+      return;
+    }
+
+    //without any the factory keeps its no argument constructor
+    Dependencies dependencies = new Dependencies(typeUtils, packageName, classes);
+    if (!dependencies.isEmpty()) {
+      dependencies.generateFactoryMembers(factoryBuilder);
+    }
+
+    //view type of each presenter, its position is the case that creates the presenter
+    ClassName index = ClassName.get("mvp.presenter", "ViewTypeIndex");
+    CodeBlock.Builder viewTypes = CodeBlock.builder().add("new $T(", index);
+    for (int i = 0; i < classes.size(); i++) {
+      viewTypes.add(i == 0 ? "$T.$L" : ", $T.$L", classes.get(i).getProviderClassName(), PresenterProviderProcessor.VIEW_TYPE_FIELD_NAME);
+      factoryBuilder.addOriginatingElement(classes.get(i).getTypeElement());
+    }
+    factoryBuilder.addField(FieldSpec.builder(index, VIEW_TYPES_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        .initializer(viewTypes.add(")").build())
+        .build());
+
+    //which lifecycle callbacks each presenter does something in, worked out by the provider processor
+    CodeBlock.Builder presenterTypes = CodeBlock.builder();
+    CodeBlock.Builder masks = CodeBlock.builder();
+    for (int i = 0; i < classes.size(); i++) {
+      presenterTypes.add(i == 0 ? "$T.class" : ", $T.class", classes.get(i).getPresenterClassName());
+      masks.add(i == 0 ? "$T.$L" : ", $T.$L", classes.get(i).getProviderClassName(), PresenterProviderProcessor.LIFECYCLE_MASK_FIELD_NAME);
+    }
+    factoryBuilder.addField(FieldSpec.builder(LifecycleMethods.LIFECYCLE_MASK, LIFECYCLE_MASKS_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        .initializer("new $T(new $T[] {$L}, new int[] {$L})", LifecycleMethods.LIFECYCLE_MASK,
+            ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(Object.class)), presenterTypes.build(), masks.build())
+        .build());
 
     ClassName view = ClassName.get("mvp", "MVPView");
     ClassName presenter = ClassName.get("mvp.presenter", "Presenter");
-    MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder(FACTORY_METHOD_NAME)
+    factoryBuilder.addMethod(MethodSpec.methodBuilder(FACTORY_METHOD_NAME)
         .addModifiers(Modifier.FINAL, Modifier.PUBLIC)
         .returns(presenter)
-        .addParameter(view, "view", Modifier.FINAL);
+        .addParameter(view, "view", Modifier.FINAL)
+        .addStatement("return $L(view.getClass())", TYPE_FACTORY_METHOD_NAME)
+        .build());
 
-    for (PresenterAnnotatedClass clazz : presenterAnnotatedClasses) {
-      clazz.generatePresenterConstructor(methodBuilder);
+    factoryBuilder.addMethod(MethodSpec.methodBuilder(TYPE_FACTORY_METHOD_NAME)
+        .addModifiers(Modifier.FINAL, Modifier.PUBLIC)
+        .returns(presenter)
+        .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(view)), "viewType", Modifier.FINAL)
+        .addStatement("return $L($L.indexOf(viewType))", INDEX_FACTORY_METHOD_NAME, VIEW_TYPES_FIELD_NAME)
+        .build());
+
+    factoryBuilder.addMethod(MethodSpec.methodBuilder("getViewTypes")
+        .addModifiers(Modifier.FINAL, Modifier.PUBLIC)
+        .returns(ParameterizedTypeName.get(ClassName.get(List.class), ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(Object.class))))
+        .addStatement("return $L.getViewTypes()", VIEW_TYPES_FIELD_NAME)
+        .build());
+
+    factoryBuilder.addMethod(MethodSpec.methodBuilder("getLifecycleMask")
+        .addModifiers(Modifier.FINAL, Modifier.PUBLIC)
+        .returns(int.class)
+        .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(presenter)), "presenterType", Modifier.FINAL)
+        .addStatement("return $L.get(presenterType)", LIFECYCLE_MASKS_FIELD_NAME)
+        .build());
+
+    MethodSpec.Builder indexMethodBuilder = MethodSpec.methodBuilder(INDEX_FACTORY_METHOD_NAME)
+        .addModifiers(Modifier.FINAL, Modifier.PUBLIC)
+        .returns(presenter)
+        .addParameter(int.class, "index", Modifier.FINAL)
+        .beginControlFlow("switch (index)");
+
+    for (int i = 0; i < classes.size(); i++) {
+      classes.get(i).generatePresenterConstructor(indexMethodBuilder, i, dependencies);
     }
 
-    methodBuilder.addStatement("throw new $T(\"could not find Presenter, please make sure you annotate with @Presenter\")", RuntimeException.class);
-    factoryBuilder.addMethod(methodBuilder.build());
+    indexMethodBuilder.addCode("default:\n")
+        .addStatement("$>throw new $T(\"could not find Presenter, please make sure you annotate with @Presenter\")$<", RuntimeException.class)
+        .endControlFlow();
+    factoryBuilder.addMethod(indexMethodBuilder.build());
     TypeSpec spec = factoryBuilder.build();
-    JavaFile javaFile = JavaFile.builder(PACKAGE_NAME, spec).build();
+    JavaFile javaFile = JavaFile.builder(packageName, spec).build();
     try {
       javaFile.writeTo(filer);
+      if (!dependencies.isEmpty()) {
+        List<TypeElement> originatingElements = new ArrayList<>();
+        for (PresenterAnnotatedClass annotatedClass : classes) {
+          originatingElements.add(annotatedClass.getTypeElement());
+        }
+        JavaFile.builder(packageName, dependencies.generateInterface(originatingElements)).build().writeTo(filer);
+      }
     } catch (IOException e) {
       error(null, "cannnot write to filer  - MVP processor" + e);
     }
@@ -1,11 +1,19 @@
 package mvp.compiler;
 
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.MethodSpec;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.ArrayType;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.ErrorType;
@@ -15,30 +23,103 @@ import javax.lang.model.type.TypeVariable;
 import javax.lang.model.util.SimpleTypeVisitor6;
 import javax.lang.model.util.Types;
 
+import mvp.Inject;
+
 public class PresenterAnnotatedClass {
+  private static final String PROVIDER_SUFFIX = "Provider";
 
   private TypeElement annotatedClassElement;
   private String qualifiedName;
   private TypeMirror view;
+  //class literals can't be parameterized
+  private TypeMirror viewErasure;
   String viewSimpleName;
   private ClassName presenterClassName;
+  private ClassName providerClassName;
+  //the constructor the factory calls, null if there isn't one it can
+  private ExecutableElement constructor;
+  private List<ExecutableElement> injectConstructors = new ArrayList<>();
 
   public PresenterAnnotatedClass(TypeElement classElement, Types typeUtils) throws ProcessingException {
 
     TypeMirror superclass = classElement.getSuperclass();
     view = getGenericType(superclass);
+    viewErasure = typeUtils.erasure(view);
 
     annotatedClassElement = classElement;
     qualifiedName = annotatedClassElement.getQualifiedName().toString();
 
     viewSimpleName = typeUtils.asElement(view).getSimpleName().toString();
     presenterClassName = ClassName.get(annotatedClassElement);
+    //nested presenters get a top level provider, Outer_Inner_Provider
+    StringBuilder providerName = new StringBuilder();
+    for (String simpleName : presenterClassName.simpleNames()) {
+      providerName.append(simpleName).append('_');
+    }
+    providerClassName = ClassName.get(presenterClassName.packageName(), providerName.append(PROVIDER_SUFFIX).toString());
+
+    ExecutableElement noArgConstructor = null;
+    for (Element enclosed : classElement.getEnclosedElements()) {
+      if (enclosed.getKind() != ElementKind.CONSTRUCTOR) {
+        continue;
+      }
+      ExecutableElement constructorElement = (ExecutableElement) enclosed;
+      if (constructorElement.getAnnotation(Inject.class) != null) {
+        injectConstructors.add(constructorElement);
+      } else if (constructorElement.getParameters().isEmpty() && constructorElement.getModifiers().contains(Modifier.PUBLIC)) {
+        noArgConstructor = constructorElement;
+      }
+    }
+    constructor = injectConstructors.isEmpty() ? noArgConstructor : injectConstructors.get(0);
+  }
+
+  public void generatePresenterConstructor(MethodSpec.Builder builder, int index, Dependencies dependencies) {
+    CodeBlock.Builder arguments = CodeBlock.builder();
+    List<? extends VariableElement> parameters = getDependencies();
+    for (int i = 0; i < parameters.size(); i++) {
+      arguments.add(i == 0 ? "$L" : ", $L", dependencies.get(parameters.get(i).asType()));
+    }
+    builder.addCode("case $L:\n", index);
+    builder.addStatement("$>return $T.$L($L)$<", providerClassName, PresenterProviderProcessor.GET_METHOD_NAME, arguments.build());
+  }
+
+  /**
+   * Constructors annotated with @Inject, there should only be the one
+   */
+  public List<ExecutableElement> getInjectConstructors() {
+    return injectConstructors;
+  }
+
+  /**
+   * The constructor the presenter is created with, the @Inject one or else the public no argument one
+   */
+  public ExecutableElement getConstructor() {
+    return constructor;
+  }
+
+  /**
+   * The parameters of the constructor the presenter is created with, each is resolved through PresenterDependencies
+   */
+  public List<? extends VariableElement> getDependencies() {
+    return constructor == null ? Collections.<VariableElement>emptyList() : constructor.getParameters();
+  }
+
+  public ClassName getPresenterClassName() {
+    return presenterClassName;
   }
 
-  public void generatePresenterConstructor(MethodSpec.Builder builder) {
-    builder.beginControlFlow("if(view instanceof $T)", view);
-    builder.addStatement("return new $L()", presenterClassName);
-    builder.endControlFlow();
+  /**
+   * The class generated alongside the presenter that creates it and names its view type
+   */
+  public ClassName getProviderClassName() {
+    return providerClassName;
+  }
+
+  /**
+   * The view type with its type arguments erased, what the generated view type table holds
+   */
+  public TypeMirror getViewErasure() {
+    return viewErasure;
   }
 
   /**
@@ -0,0 +1,156 @@
+package mvp.compiler;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+import com.sun.source.util.Trees;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import mvp.Presenter;
+
+import static java.util.Collections.singleton;
+
+/**
+ * Writes a provider for each presenter on its own, everything it needs is reachable from the one annotated class.  That
+ * makes it an isolating processor to Gradle, changing a presenter only regenerates and recompiles that presenter's provider.
+ * {@link MVPAnnotationProcessor} then only has to list the providers in the factory.
+ */
+public class PresenterProviderProcessor extends AbstractProcessor {
+
+  static final String GET_METHOD_NAME = "get";
+  static final String VIEW_TYPE_FIELD_NAME = "VIEW_TYPE";
+  static final String LIFECYCLE_MASK_FIELD_NAME = "LIFECYCLE_MASK";
+
+  private Types typeUtils;
+  private Elements elementUtils;
+  private Filer filer;
+  private Messager messager;
+  private Trees trees;
+
+  @Override
+  public synchronized void init(ProcessingEnvironment processingEnv) {
+    super.init(processingEnv);
+    typeUtils = processingEnv.getTypeUtils();
+    elementUtils = processingEnv.getElementUtils();
+    filer = processingEnv.getFiler();
+    messager = processingEnv.getMessager();
+    try {
+      trees = Trees.instance(processingEnv);
+    } catch (IllegalArgumentException | NoClassDefFoundError e) {
+      //not javac, every presenter is treated as source
+    }
+  }
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return singleton(Presenter.class.getCanonicalName());
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element annotatedElement : roundEnv.getElementsAnnotatedWith(Presenter.class)) {
+      try {
+        if (annotatedElement.getKind() != ElementKind.CLASS) {
+          throw new ProcessingException(annotatedElement, "Only classes can be annotated with @%s", Presenter.class.getSimpleName());
+        }
+        TypeElement typeElement = (TypeElement) annotatedElement;
+        if (!isSource(typeElement)) {
+          //an unchanged presenter handed back for the factory, its provider was compiled with it
+          continue;
+        }
+
+        PresenterAnnotatedClass annotatedClass = new PresenterAnnotatedClass(typeElement, typeUtils);
+
+        Validator.checkValidClass(elementUtils, typeUtils, annotatedClass);
+
+        writeProvider(annotatedClass);
+      } catch (ProcessingException e) {
+        error(e.getElement(), "MVP processing exception " + e.getMessage());
+      }
+    }
+
+    //left for the factory processor, listed after this one, to claim
+    return false;
+  }
+
+  private boolean isSource(TypeElement typeElement) {
+    return trees == null || trees.getPath(typeElement) != null;
+  }
+
+  private void writeProvider(PresenterAnnotatedClass annotatedClass) {
+    //takes what the constructor does, the factory resolves it
+    MethodSpec.Builder get = MethodSpec.methodBuilder(GET_METHOD_NAME)
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .returns(annotatedClass.getPresenterClassName());
+    CodeBlock.Builder arguments = CodeBlock.builder();
+    List<? extends VariableElement> parameters = annotatedClass.getDependencies();
+    for (int i = 0; i < parameters.size(); i++) {
+      VariableElement parameter = parameters.get(i);
+      get.addParameter(TypeName.get(parameter.asType()), parameter.getSimpleName().toString(), Modifier.FINAL);
+      arguments.add(i == 0 ? "$L" : ", $L", parameter.getSimpleName());
+    }
+    get.addStatement("return new $T($L)", annotatedClass.getPresenterClassName(), arguments.build());
+
+    ClassName view = ClassName.get("mvp", "MVPView");
+    TypeSpec provider = TypeSpec.classBuilder(annotatedClass.getProviderClassName().simpleName())
+        .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .addJavadoc("Auto generated class")
+        .addOriginatingElement(annotatedClass.getTypeElement())
+        .addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(view)),
+            VIEW_TYPE_FIELD_NAME, Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+            .initializer("$T.class", annotatedClass.getViewErasure())
+            .build())
+        .addField(FieldSpec.builder(int.class, LIFECYCLE_MASK_FIELD_NAME, Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+            .initializer(LifecycleMethods.mask(annotatedClass.getTypeElement(), trees))
+            .build())
+        .addMethod(MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PRIVATE)
+            .build())
+        .addMethod(get.build())
+        .build();
+    try {
+      JavaFile.builder(annotatedClass.getProviderClassName().packageName(), provider).build().writeTo(filer);
+    } catch (IOException e) {
+      error(annotatedClass.getTypeElement(), "cannnot write to filer  - MVP processor" + e);
+    }
+  }
+
+  /**
+   * Prints an error message
+   *
+   * @param e The element which has caused the error. Can be null
+   * @param msg The error message
+   */
+  public void error(Element e, String msg) {
+    messager.printMessage(Diagnostic.Kind.ERROR, msg, e);
+  }
+}
@@ -1,14 +1,25 @@
 package mvp.compiler;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 
+import mvp.Inject;
 import mvp.Presenter;
+import mvp.ViewState;
 import mvp.compiler.PresenterAnnotatedClass;
 import mvp.compiler.ProcessingException;
 
@@ -67,18 +78,109 @@ public class Validator {
       }
     }*/
 
+    List<ExecutableElement> injectConstructors = item.getInjectConstructors();
+    if (injectConstructors.size() > 1) {
+      throw new ProcessingException(injectConstructors.get(1), "The class %s has more than one constructor annotated with @%s", classElement.getQualifiedName().toString(),
+          Inject.class.getSimpleName());
+    }
+    if (injectConstructors.size() == 1) {
+      checkValidInjectConstructor(classElement, injectConstructors.get(0));
+      return;
+    }
+
     // Check if an empty public constructor is given
-    for (Element enclosed : classElement.getEnclosedElements()) {
-      if (enclosed.getKind() == ElementKind.CONSTRUCTOR) {
-        ExecutableElement constructorElement = (ExecutableElement) enclosed;
-        if (constructorElement.getParameters().size() == 0 && constructorElement.getModifiers().contains(Modifier.PUBLIC)) {
-          // Found an empty constructor
-          return;
-        }
-      }
+    if (item.getConstructor() != null) {
+      return;
     }
 
     // No empty constructor found
-    throw new ProcessingException(classElement, "The class %s must provide an public empty default constructor", classElement.getQualifiedName().toString());
+    throw new ProcessingException(classElement, "The class %s must provide an public empty default constructor or one annotated with @%s",
+        classElement.getQualifiedName().toString(), Inject.class.getSimpleName());
+  }
+
+  private static void checkValidInjectConstructor(TypeElement classElement, ExecutableElement constructorElement) throws ProcessingException {
+    if (!constructorElement.getModifiers().contains(Modifier.PUBLIC)) {
+      throw new ProcessingException(constructorElement, "The @%s constructor of %s is not public.", Inject.class.getSimpleName(),
+          classElement.getQualifiedName().toString());
+    }
+    for (VariableElement parameter : constructorElement.getParameters()) {
+      // Dependencies are asked for by type, which needs a class or interface to name the method after
+      if (parameter.asType().getKind() != TypeKind.DECLARED) {
+        throw new ProcessingException(parameter, "The parameter %s of %s must be a class or interface to be injected", parameter.getSimpleName(),
+            classElement.getQualifiedName().toString());
+      }
+    }
+  }
+
+  /**
+   * Checks no two presenters are for the same view, the factory couldn't know which to create
+   */
+  public static void checkDistinctViews(Types typeUtils, List<PresenterAnnotatedClass> items) throws ProcessingException {
+    //by name rather than comparing every pair, an app can have thousands of presenters
+    Map<String, PresenterAnnotatedClass> byView = new HashMap<>();
+    for (PresenterAnnotatedClass item : items) {
+      PresenterAnnotatedClass other = byView.put(item.getViewErasure().toString(), item);
+      if (other != null && typeUtils.isSameType(item.getViewErasure(), other.getViewErasure())) {
+        throw new ProcessingException(item.getTypeElement(), "The classes %s and %s are both presenters for %s", other.getQualifiedName(),
+            item.getQualifiedName(), item.getViewErasure());
+      }
+    }
+  }
+
+  /**
+   * Checks a @ViewState is a public interface of plain getters, and that the view has a setter for each of them
+   */
+  public static void checkValidViewState(Elements elementUtils, Types typeUtils, ViewStateAnnotatedClass item) throws ProcessingException {
+    TypeElement classElement = item.getTypeElement();
+    if (classElement.getKind() != ElementKind.INTERFACE) {
+      throw new ProcessingException(classElement, "Only interfaces can be annotated with @%s", ViewState.class.getSimpleName());
+    }
+    if (!classElement.getModifiers().contains(Modifier.PUBLIC)) {
+      throw new ProcessingException(classElement, "The interface %s is not public.", classElement.getQualifiedName().toString());
+    }
+    if (!classElement.getTypeParameters().isEmpty() || !classElement.getInterfaces().isEmpty()) {
+      throw new ProcessingException(classElement, "The interface %s annotated with @%s can't be generic or extend other interfaces",
+          classElement.getQualifiedName().toString(), ViewState.class.getSimpleName());
+    }
+    if (item.getView().getKind() != TypeKind.DECLARED) {
+      throw new ProcessingException(classElement, "The view of %s must be a class or interface", classElement.getQualifiedName().toString());
+    }
+    TypeElement mvpView = elementUtils.getTypeElement("mvp.MVPView");
+    if (mvpView != null && !typeUtils.isAssignable(item.getView(), mvpView.asType())) {
+      throw new ProcessingException(classElement, "The view %s of %s must extend %s", item.getView(), classElement.getQualifiedName().toString(),
+          mvpView.getQualifiedName());
+    }
+
+    Set<String> names = new HashSet<>();
+    for (ViewStateAnnotatedClass.Field field : item.getFields()) {
+      ExecutableElement getter = field.getGetter();
+      if (!getter.getParameters().isEmpty() || !getter.getTypeParameters().isEmpty() || field.getType().getKind() == TypeKind.VOID) {
+        throw new ProcessingException(getter, "The method %s of %s must take no arguments and return the field", getter.getSimpleName(),
+            classElement.getQualifiedName().toString());
+      }
+      if (!names.add(field.getName())) {
+        throw new ProcessingException(getter, "The interface %s has more than one method for the field %s", classElement.getQualifiedName().toString(),
+            field.getName());
+      }
+      if (findSetter(elementUtils, typeUtils, item.getView(), field) == null) {
+        throw new ProcessingException(getter, "The view %s must have a public method %s taking %s to show %s of %s", item.getView(),
+            field.getSetterName(), field.getType(), field.getName(), classElement.getQualifiedName().toString());
+      }
+    }
+  }
+
+  private static ExecutableElement findSetter(Elements elementUtils, Types typeUtils, TypeMirror view, ViewStateAnnotatedClass.Field field) {
+    TypeElement viewElement = (TypeElement) typeUtils.asElement(view);
+    for (Element member : elementUtils.getAllMembers(viewElement)) {
+      if (member.getKind() != ElementKind.METHOD || !member.getSimpleName().contentEquals(field.getSetterName())
+          || !member.getModifiers().contains(Modifier.PUBLIC)) {
+        continue;
+      }
+      List<? extends VariableElement> parameters = ((ExecutableElement) member).getParameters();
+      if (parameters.size() == 1 && typeUtils.isAssignable(field.getType(), parameters.get(0).asType())) {
+        return (ExecutableElement) member;
+      }
+    }
+    return null;
   }
 }
@@ -0,0 +1,142 @@
+package mvp.compiler;
+
+import com.squareup.javapoet.ClassName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeMirror;
+
+import mvp.ViewState;
+
+/**
+ * An interface annotated with @ViewState, each of its methods is a field of the state
+ */
+public class ViewStateAnnotatedClass {
+  private static final String VALUE_SUFFIX = "Value";
+  private static final String DIFFER_SUFFIX = "Differ";
+
+  private final TypeElement annotatedClassElement;
+  private final TypeMirror view;
+  private final List<Field> fields = new ArrayList<>();
+  private final ClassName stateClassName;
+  private final ClassName valueClassName;
+  private final ClassName differClassName;
+
+  public ViewStateAnnotatedClass(TypeElement classElement) {
+    annotatedClassElement = classElement;
+    view = getView(classElement.getAnnotation(ViewState.class));
+    for (Element enclosed : classElement.getEnclosedElements()) {
+      if (enclosed.getKind() == ElementKind.METHOD) {
+        fields.add(new Field((ExecutableElement) enclosed));
+      }
+    }
+
+    stateClassName = ClassName.get(classElement);
+    //nested states get top level classes, Outer_Inner_Value, like presenter providers
+    StringBuilder prefix = new StringBuilder();
+    for (String simpleName : stateClassName.simpleNames()) {
+      prefix.append(simpleName).append('_');
+    }
+    valueClassName = ClassName.get(stateClassName.packageName(), prefix + VALUE_SUFFIX);
+    differClassName = ClassName.get(stateClassName.packageName(), prefix + DIFFER_SUFFIX);
+  }
+
+  private static TypeMirror getView(ViewState annotation) {
+    try {
+      annotation.value();
+    } catch (MirroredTypeException e) {
+      //the class isn't loaded while compiling, only its type is known
+      return e.getTypeMirror();
+    }
+    throw new IllegalStateException("@ViewState value should only be available as a type mirror");
+  }
+
+  /**
+   * The original element that was annotated with @ViewState
+   */
+  public TypeElement getTypeElement() {
+    return annotatedClassElement;
+  }
+
+  public TypeMirror getView() {
+    return view;
+  }
+
+  /**
+   * In the order they are declared, which is the order of the generated constructor's parameters
+   */
+  public List<Field> getFields() {
+    return fields;
+  }
+
+  public ClassName getStateClassName() {
+    return stateClassName;
+  }
+
+  /**
+   * The generated immutable implementation
+   */
+  public ClassName getValueClassName() {
+    return valueClassName;
+  }
+
+  public ClassName getDifferClassName() {
+    return differClassName;
+  }
+
+  public static class Field {
+    private final ExecutableElement getter;
+    private final String name;
+
+    Field(ExecutableElement getter) {
+      this.getter = getter;
+      name = propertyName(getter.getSimpleName().toString());
+    }
+
+    /**
+     * title for title(), getTitle() and isTitle()
+     */
+    private static String propertyName(String methodName) {
+      for (String prefix : new String[] {"get", "is"}) {
+        if (methodName.length() > prefix.length() && methodName.startsWith(prefix)
+            && Character.isUpperCase(methodName.charAt(prefix.length()))) {
+          return Character.toLowerCase(methodName.charAt(prefix.length())) + methodName.substring(prefix.length() + 1);
+        }
+      }
+      return methodName;
+    }
+
+    public ExecutableElement getGetter() {
+      return getter;
+    }
+
+    public String getGetterName() {
+      return getter.getSimpleName().toString();
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public TypeMirror getType() {
+      return getter.getReturnType();
+    }
+
+    /**
+     * The view method that shows the field, setTitle for title
+     */
+    public String getSetterName() {
+      return "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    public String getWitherName() {
+      return "with" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+  }
+}
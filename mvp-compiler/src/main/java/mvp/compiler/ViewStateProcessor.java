@@ -0,0 +1,249 @@
+package mvp.compiler;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import mvp.ViewState;
+
+import static java.util.Collections.singleton;
+
+/**
+ * Writes an immutable implementation of each @ViewState interface, HomeState_Value, and a differ, HomeState_Differ, that
+ * calls the view's setters for only the fields that changed.  Everything comes from the one interface and its view, so it is
+ * an isolating processor to Gradle.
+ */
+public class ViewStateProcessor extends AbstractProcessor {
+
+  private static final ClassName VIEW_STATE_DIFFER = ClassName.get("mvp.presenter", "ViewStateDiffer");
+  private static final String INSTANCE_FIELD_NAME = "INSTANCE";
+
+  private Types typeUtils;
+  private Elements elementUtils;
+  private Filer filer;
+  private Messager messager;
+
+  @Override
+  public synchronized void init(ProcessingEnvironment processingEnv) {
+    super.init(processingEnv);
+    typeUtils = processingEnv.getTypeUtils();
+    elementUtils = processingEnv.getElementUtils();
+    filer = processingEnv.getFiler();
+    messager = processingEnv.getMessager();
+  }
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return singleton(ViewState.class.getCanonicalName());
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element annotatedElement : roundEnv.getElementsAnnotatedWith(ViewState.class)) {
+      try {
+        ViewStateAnnotatedClass annotatedClass = new ViewStateAnnotatedClass((TypeElement) annotatedElement);
+
+        Validator.checkValidViewState(elementUtils, typeUtils, annotatedClass);
+
+        write(annotatedClass, generateValue(annotatedClass));
+        write(annotatedClass, generateDiffer(annotatedClass));
+      } catch (ProcessingException e) {
+        error(e.getElement(), "MVP processing exception " + e.getMessage());
+      }
+    }
+
+    return true;
+  }
+
+  private TypeSpec generateValue(ViewStateAnnotatedClass annotatedClass) {
+    ClassName value = annotatedClass.getValueClassName();
+    List<ViewStateAnnotatedClass.Field> fields = annotatedClass.getFields();
+    TypeSpec.Builder builder = TypeSpec.classBuilder(value.simpleName())
+        .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .addJavadoc("Auto generated class")
+        .addOriginatingElement(annotatedClass.getTypeElement())
+        .addSuperinterface(annotatedClass.getStateClassName());
+
+    MethodSpec.Builder constructor = MethodSpec.constructorBuilder().addModifiers(Modifier.PUBLIC);
+    MethodSpec.Builder equals = MethodSpec.methodBuilder("equals")
+        .addAnnotation(Override.class)
+        .addModifiers(Modifier.PUBLIC)
+        .returns(boolean.class)
+        .addParameter(Object.class, "object")
+        .beginControlFlow("if (object == this)")
+        .addStatement("return true")
+        .endControlFlow()
+        .beginControlFlow("if (!(object instanceof $T))", value)
+        .addStatement("return false")
+        .endControlFlow()
+        .addStatement("$T other = ($T) object", value, value);
+    CodeBlock.Builder equalFields = CodeBlock.builder();
+    MethodSpec.Builder hashCode = MethodSpec.methodBuilder("hashCode")
+        .addAnnotation(Override.class)
+        .addModifiers(Modifier.PUBLIC)
+        .returns(int.class)
+        .addStatement("int hash = 1");
+    CodeBlock.Builder toString = CodeBlock.builder().add("$S", annotatedClass.getStateClassName().simpleName() + "{");
+
+    for (int i = 0; i < fields.size(); i++) {
+      ViewStateAnnotatedClass.Field field = fields.get(i);
+      TypeName type = TypeName.get(field.getType());
+      builder.addField(type, field.getName(), Modifier.PRIVATE, Modifier.FINAL);
+      constructor.addParameter(type, field.getName(), Modifier.FINAL)
+          .addStatement("this.$L = $L", field.getName(), field.getName());
+      builder.addMethod(MethodSpec.methodBuilder(field.getGetterName())
+          .addAnnotation(Override.class)
+          .addModifiers(Modifier.PUBLIC)
+          .returns(type)
+          .addStatement("return $L", field.getName())
+          .build());
+
+      //a copy with the one field changed, or this when it is already that
+      builder.addMethod(MethodSpec.methodBuilder(field.getWitherName())
+          .addModifiers(Modifier.PUBLIC)
+          .returns(value)
+          .addParameter(type, field.getName(), Modifier.FINAL)
+          .beginControlFlow("if ($L)", equal(field.getType(), CodeBlock.of("this.$L", field.getName()), CodeBlock.of("$L", field.getName())))
+          .addStatement("return this")
+          .endControlFlow()
+          .addStatement("return new $T($L)", value, withThis(fields, field))
+          .build());
+
+      //qualified so a field can't be mistaken for the locals
+      equalFields.add(i == 0 ? "$L" : "\n    && $L", equal(field.getType(), CodeBlock.of("this.$L", field.getName()),
+          CodeBlock.of("other.$L", field.getName())));
+      hashCode.addStatement("hash = 31 * hash + $L", hash(field.getType(), "this." + field.getName()));
+      toString.add(" + $S + $L", (i == 0 ? "" : ", ") + field.getName() + "=", field.getName());
+    }
+
+    builder.addMethod(constructor.build());
+    builder.addMethod(equals.addStatement("return $L", fields.isEmpty() ? CodeBlock.of("true") : equalFields.build()).build());
+    builder.addMethod(hashCode.addStatement("return hash").build());
+    builder.addMethod(MethodSpec.methodBuilder("toString")
+        .addAnnotation(Override.class)
+        .addModifiers(Modifier.PUBLIC)
+        .returns(String.class)
+        .addStatement("return $L + $S", toString.build(), "}")
+        .build());
+    return builder.build();
+  }
+
+  /**
+   * The constructor arguments for a copy, every field of this but the one being changed
+   */
+  private static CodeBlock withThis(List<ViewStateAnnotatedClass.Field> fields, ViewStateAnnotatedClass.Field changed) {
+    CodeBlock.Builder arguments = CodeBlock.builder();
+    for (int i = 0; i < fields.size(); i++) {
+      String name = fields.get(i).getName();
+      arguments.add(i == 0 ? "$L" : ", $L", fields.get(i) == changed ? name : "this." + name);
+    }
+    return arguments.build();
+  }
+
+  private TypeSpec generateDiffer(ViewStateAnnotatedClass annotatedClass) {
+    ClassName differ = annotatedClass.getDifferClassName();
+    TypeName state = annotatedClass.getStateClassName();
+    TypeName view = TypeName.get(typeUtils.erasure(annotatedClass.getView()));
+    MethodSpec.Builder apply = MethodSpec.methodBuilder("apply")
+        .addAnnotation(Override.class)
+        .addModifiers(Modifier.PUBLIC)
+        .addParameter(state, "previous", Modifier.FINAL)
+        .addParameter(state, "next", Modifier.FINAL)
+        .addParameter(view, "view", Modifier.FINAL);
+    for (ViewStateAnnotatedClass.Field field : annotatedClass.getFields()) {
+      //no locals, they could clash with the parameters
+      CodeBlock next = CodeBlock.of("next.$L()", field.getGetterName());
+      apply.beginControlFlow("if (previous == null || !($L))", equal(field.getType(), CodeBlock.of("previous.$L()", field.getGetterName()), next))
+          .addStatement("view.$L($L)", field.getSetterName(), next)
+          .endControlFlow();
+    }
+
+    return TypeSpec.classBuilder(differ.simpleName())
+        .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .addJavadoc("Auto generated class")
+        .addOriginatingElement(annotatedClass.getTypeElement())
+        .addSuperinterface(ParameterizedTypeName.get(VIEW_STATE_DIFFER, state, view))
+        .addField(FieldSpec.builder(differ, INSTANCE_FIELD_NAME, Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+            .initializer("new $T()", differ)
+            .build())
+        .addMethod(MethodSpec.constructorBuilder()
+            .addModifiers(Modifier.PRIVATE)
+            .build())
+        .addMethod(apply.build())
+        .build();
+  }
+
+  /**
+   * Primitives by value, floating point as the boxed types' equals does so NaN equals NaN, and objects by equals.  Arrays
+   * are compared by reference, give the state a new one rather than changing it.
+   */
+  private static CodeBlock equal(TypeMirror type, CodeBlock lhs, CodeBlock rhs) {
+    if (type.getKind() == TypeKind.FLOAT) {
+      return CodeBlock.of("$T.compare($L, $L) == 0", Float.class, lhs, rhs);
+    }
+    if (type.getKind() == TypeKind.DOUBLE) {
+      return CodeBlock.of("$T.compare($L, $L) == 0", Double.class, lhs, rhs);
+    }
+    if (type.getKind().isPrimitive() || type.getKind() == TypeKind.ARRAY) {
+      return CodeBlock.of("$L == $L", lhs, rhs);
+    }
+    return CodeBlock.of("($L == null ? $L == null : $L.equals($L))", lhs, rhs, lhs, rhs);
+  }
+
+  private CodeBlock hash(TypeMirror type, String name) {
+    if (type.getKind().isPrimitive()) {
+      return CodeBlock.of("$T.valueOf($L).hashCode()", TypeName.get(type).box(), name);
+    }
+    if (type.getKind() == TypeKind.ARRAY) {
+      return CodeBlock.of("$T.identityHashCode($L)", System.class, name);
+    }
+    return CodeBlock.of("($L == null ? 0 : $L.hashCode())", name, name);
+  }
+
+  private void write(ViewStateAnnotatedClass annotatedClass, TypeSpec spec) {
+    try {
+      JavaFile.builder(annotatedClass.getStateClassName().packageName(), spec).build().writeTo(filer);
+    } catch (IOException e) {
+      error(annotatedClass.getTypeElement(), "cannnot write to filer  - MVP processor" + e);
+    }
+  }
+
+  /**
+   * Prints an error message
+   *
+   * @param e The element which has caused the error. Can be null
+   * @param msg The error message
+   */
+  public void error(Element e, String msg) {
+    messager.printMessage(Diagnostic.Kind.ERROR, msg, e);
+  }
+}
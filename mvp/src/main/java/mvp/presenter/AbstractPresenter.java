@@ -1,10 +1,36 @@
 package mvp.presenter;
 
+import android.support.annotation.Nullable;
+
 import mvp.MVPView;
+import rx.Observable;
+import rx.Observer;
+import rx.Subscription;
 
-public abstract class AbstractPresenter<VIEW extends MVPView> implements Presenter<VIEW> {
+public abstract class AbstractPresenter<VIEW extends MVPView> implements Presenter<VIEW>, ScopedPresenter {
+  private static final Object VIEW_STATE_KEY = new Object();
 
   protected VIEW view;
+  private final ViewCommandQueue<VIEW> viewCommands = new ViewCommandQueue<>();
+  private final PresenterSubscriptions subscriptions = new PresenterSubscriptions();
+  //the latest state given to setViewState, null until there is one
+  private volatile StateUpdate<?, VIEW> viewState;
+  //counts views taken, a count rather than the view itself so a dropped view isn't kept
+  private volatile int viewCount;
+  //which view was last rendered and with what, only touched by renderViewState so guarded by the command queue
+  private int renderedViewCount;
+  private Object renderedState;
+  private final ViewCommand<VIEW> renderViewState = new ViewCommand<VIEW>() {
+    @Override
+    public void apply(VIEW view) {
+      StateUpdate<?, VIEW> update = viewState;
+      //a view that hasn't been rendered yet, after a rotation say, gets every field
+      int current = viewCount;
+      update.apply(current == renderedViewCount ? renderedState : null, view);
+      renderedViewCount = current;
+      renderedState = update.state;
+    }
+  };
 
   @Override
   public VIEW getView() {
@@ -14,18 +40,98 @@ public abstract class AbstractPresenter<VIEW extends MVPView> implements Present
   @Override
   public void takeView(VIEW view) {
     this.view = view;
+    viewCount++;
+    if (viewState != null) {
+      viewCommands.post(VIEW_STATE_KEY, renderViewState);
+    }
+    //updates and stream items that arrived while detached are delivered before onTakeView so anything it pushes wins, and
+    //both keep delivering until after onDropView
+    viewCommands.attach(view);
+    subscriptions.attach();
     onTakeView();
   }
 
   @Override
   public void dropView() {
     onDropView();
+    subscriptions.detach();
+    viewCommands.detach();
     view = null;
   }
 
+  /**
+   * Updates the view now if there is one, otherwise when the next one is taken.  Use it instead of null checking the view
+   * from callbacks that can arrive while it is away.
+   *
+   * @param key - while detached only the latest command for each key is kept, null to keep every command
+   * @see ViewCommandQueue
+   */
+  protected void withView(@Nullable Object key, ViewCommand<VIEW> command) {
+    viewCommands.post(key, command);
+  }
+
+  /**
+   * Shows a new state, only the setters for fields that differ from what the view was last shown are called.  A new view is
+   * given the whole of the latest state when it is taken.
+   *
+   * @param differ - generated for the @ViewState interface, HomeState_Differ.INSTANCE for HomeState
+   */
+  protected <S> void setViewState(S state, ViewStateDiffer<S, ? super VIEW> differ) {
+    viewState = new StateUpdate<>(state, differ);
+    viewCommands.post(VIEW_STATE_KEY, renderViewState);
+  }
+
+  /**
+   * Limits {@link #withView} updates to one batch a frame, for presenters fed by streams faster than the screen can draw
+   *
+   * @param frameTicker - usually a {@link ChoreographerFrameTicker}, null to update the view as soon as asked
+   */
+  protected void setFrameTicker(@Nullable FrameTicker frameTicker) {
+    viewCommands.setFrameTicker(frameTicker);
+  }
+
+  /**
+   * Subscribes for the life of the presenter, the stream carries on through rotations and the observer only hears from it
+   * while there is a view.
+   *
+   * @see PresenterSubscriptions
+   */
+  protected <T> Subscription subscribe(Observable<T> observable, Observer<? super T> observer) {
+    return subscriptions.subscribe(observable, observer);
+  }
+
+  /**
+   * Like {@link #subscribe(Observable, Observer)} but the latest replayCount items are replayed to every new view, so data
+   * that arrived during a rotation isn't fetched again.
+   */
+  protected <T> Subscription subscribe(Object key, int replayCount, Observable<T> observable, Observer<? super T> observer) {
+    return subscriptions.subscribe(key, replayCount, observable, observer);
+  }
+
+  @Override
+  public PresenterSubscriptions getSubscriptions() {
+    return subscriptions;
+  }
+
   public abstract void onDropView();
 
   public abstract void onTakeView();
 
   public abstract void destroy();
-}
\ No newline at end of file
+
+  private static final class StateUpdate<S, VIEW extends MVPView> {
+    final S state;
+    final ViewStateDiffer<S, ? super VIEW> differ;
+
+    StateUpdate(S state, ViewStateDiffer<S, ? super VIEW> differ) {
+      this.state = state;
+      this.differ = differ;
+    }
+
+    @SuppressWarnings("unchecked")
+    void apply(Object previous, VIEW view) {
+      //previous was given with the same differ or is null, setViewState is only ever called with the one state type
+      differ.apply((S) previous, state, view);
+    }
+  }
+}
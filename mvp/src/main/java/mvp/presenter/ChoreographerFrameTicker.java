@@ -0,0 +1,56 @@
+package mvp.presenter;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ticks with the display's vsync, create it on the main thread.  One ticker can be shared by many presenters, their ticks
+ * are run from a single frame callback so posting allocates nothing.
+ */
+public final class ChoreographerFrameTicker implements FrameTicker {
+  private final Choreographer choreographer;
+  //posted to, guarded by this
+  private List<Runnable> pending = new ArrayList<>();
+  //being run, only touched by the frame callback
+  private List<Runnable> running = new ArrayList<>();
+  private boolean posted;
+  private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+    @Override
+    public void doFrame(long frameTimeNanos) {
+      List<Runnable> due;
+      synchronized (ChoreographerFrameTicker.this) {
+        //swapped so ticks posted while these run wait for the next frame
+        due = pending;
+        pending = running;
+        running = due;
+        posted = false;
+      }
+      try {
+        for (int i = 0; i < due.size(); i++) {
+          due.get(i).run();
+        }
+      } finally {
+        due.clear();
+      }
+    }
+  };
+
+  public ChoreographerFrameTicker() {
+    this(Choreographer.getInstance());
+  }
+
+  public ChoreographerFrameTicker(Choreographer choreographer) {
+    this.choreographer = choreographer;
+  }
+
+  @Override
+  public synchronized void postTick(Runnable tick) {
+    pending.add(tick);
+    if (!posted) {
+      posted = true;
+      choreographer.postFrameCallback(frameCallback);
+    }
+  }
+}
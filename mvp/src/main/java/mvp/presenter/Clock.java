@@ -0,0 +1,18 @@
+package mvp.presenter;
+
+/**
+ * Time source for anything in the service that expires, swap it out to drive time from tests.
+ */
+public interface Clock {
+  Clock SYSTEM = new Clock() {
+    @Override
+    public long uptimeMillis() {
+      return System.nanoTime() / 1000000;
+    }
+  };
+
+  /**
+   * @return milliseconds since some fixed point, only differences between values are meaningful
+   */
+  long uptimeMillis();
+}
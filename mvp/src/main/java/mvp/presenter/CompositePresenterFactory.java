@@ -0,0 +1,79 @@
+package mvp.presenter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mvp.MVPView;
+
+/**
+ * Creates presenters from the generated factories of several modules as if they were one.  The view types of every module
+ * go in a single {@link ViewTypeIndex}, so finding a view's presenter is still one lookup however many modules there are,
+ * and the most specific view type wins across modules too.
+ */
+public final class CompositePresenterFactory implements PresenterTypeFactory, PresenterLifecycleMasks {
+  private final ViewTypeIndex viewTypes;
+  //for each position in the index, which module and where in it
+  private final PresenterModuleFactory[] modules;
+  private final int[] moduleIndices;
+  private final PresenterModuleFactory[] moduleFactories;
+
+  /**
+   * @throws IllegalArgumentException if two modules have a presenter for the same view type
+   */
+  public CompositePresenterFactory(PresenterModuleFactory... moduleFactories) {
+    List<Class<?>> types = new ArrayList<>();
+    Map<Class<?>, PresenterModuleFactory> owners = new HashMap<>();
+    for (PresenterModuleFactory module : moduleFactories) {
+      for (Class<?> type : module.getViewTypes()) {
+        PresenterModuleFactory owner = owners.put(type, module);
+        if (owner != null) {
+          throw new IllegalArgumentException(owner.getClass().getName() + " and " + module.getClass().getName()
+              + " both have a presenter for " + type.getName());
+        }
+        types.add(type);
+      }
+    }
+    modules = new PresenterModuleFactory[types.size()];
+    moduleIndices = new int[types.size()];
+    int position = 0;
+    for (PresenterModuleFactory module : moduleFactories) {
+      for (int i = 0; i < module.getViewTypes().size(); i++) {
+        modules[position] = module;
+        moduleIndices[position] = i;
+        position++;
+      }
+    }
+    viewTypes = new ViewTypeIndex(types.toArray(new Class<?>[types.size()]));
+    this.moduleFactories = moduleFactories.clone();
+  }
+
+  @Override
+  public Presenter createPresenter(MVPView view) {
+    return createPresenterForType(view.getClass());
+  }
+
+  @Override
+  public Presenter createPresenterForType(Class<? extends MVPView> viewType) {
+    int index = viewTypes.indexOf(viewType);
+    if (index == ViewTypeIndex.NOT_FOUND) {
+      throw new RuntimeException("could not find Presenter for " + viewType.getName() + ", please make sure you annotate with @Presenter"
+          + " and add the module's factory");
+    }
+    return modules[index].createPresenterAt(moduleIndices[index]);
+  }
+
+  @Override
+  public int getLifecycleMask(Class<? extends Presenter> presenterType) {
+    for (PresenterModuleFactory module : moduleFactories) {
+      if (module instanceof PresenterLifecycleMasks) {
+        int mask = ((PresenterLifecycleMasks) module).getLifecycleMask(presenterType);
+        if (mask != LifecycleMask.UNKNOWN) {
+          return mask;
+        }
+      }
+    }
+    return LifecycleMask.UNKNOWN;
+  }
+}
@@ -0,0 +1,12 @@
+package mvp.presenter;
+
+/**
+ * Source of frame ticks for throttled view updates, see {@link ViewCommandQueue#setFrameTicker(FrameTicker)}.  Use
+ * {@link ChoreographerFrameTicker} on a device, tests can hold on to the ticks and run them when they like.
+ */
+public interface FrameTicker {
+  /**
+   * Runs tick once at the start of the next frame, on the thread that draws.  May be called from any thread.
+   */
+  void postTick(Runnable tick);
+}
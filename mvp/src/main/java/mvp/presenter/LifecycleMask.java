@@ -0,0 +1,62 @@
+package mvp.presenter;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Which of onViewReady, onResume and onPause each presenter class does anything in, worked out by the annotation processor
+ * from the method bodies.  The service skips the callbacks a presenter leaves empty, so a screen with dozens of child
+ * presenters makes only the calls that matter on each lifecycle change.
+ *
+ * Presenter classes that aren't in the table get every callback, as do those the processor couldn't see the source of.
+ */
+public final class LifecycleMask {
+  public static final int NONE = 0;
+  public static final int VIEW_READY = 1;
+  public static final int RESUME = 1 << 1;
+  public static final int PAUSE = 1 << 2;
+  public static final int ALL = VIEW_READY | RESUME | PAUSE;
+  //every bit set so a presenter nothing is known about gets every callback
+  public static final int UNKNOWN = -1;
+
+  //only read after construction
+  private final Map<Class<?>, Integer> masks;
+
+  /**
+   * @param presenterTypes - the presenter classes, each has the mask at the same position in masks
+   */
+  public LifecycleMask(Class<?>[] presenterTypes, int[] masks) {
+    if (presenterTypes.length != masks.length) {
+      throw new IllegalArgumentException(presenterTypes.length + " presenter types but " + masks.length + " masks");
+    }
+    this.masks = new IdentityHashMap<>(presenterTypes.length);
+    for (int i = 0; i < presenterTypes.length; i++) {
+      this.masks.put(presenterTypes[i], masks[i]);
+    }
+  }
+
+  /**
+   * @return the callbacks the presenter class does something in, or {@link #UNKNOWN}
+   */
+  public int get(Class<?> presenterType) {
+    Integer mask = masks.get(presenterType);
+    return mask == null ? UNKNOWN : mask;
+  }
+
+  /**
+   * @param callback - {@link PresenterCallback#VIEW_READY}, {@link PresenterCallback#RESUME} or {@link PresenterCallback#PAUSE},
+   * anything else is always made
+   */
+  public static boolean includes(int mask, PresenterCallback callback) {
+    switch (callback) {
+      case VIEW_READY:
+        return (mask & VIEW_READY) != 0;
+      case RESUME:
+        return (mask & RESUME) != 0;
+      case PAUSE:
+        return (mask & PAUSE) != 0;
+      default:
+        return true;
+    }
+  }
+}
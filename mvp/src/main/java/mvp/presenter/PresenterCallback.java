@@ -0,0 +1,17 @@
+package mvp.presenter;
+
+/**
+ * The presenter calls the service makes on behalf of a view, used to label timings.  SAVE_STATE and RESTORE_STATE time
+ * encoding and decoding {@link RetainedState} snapshots.
+ */
+public enum PresenterCallback {
+  CREATE,
+  TAKE_VIEW,
+  VIEW_READY,
+  RESUME,
+  PAUSE,
+  DROP_VIEW,
+  DESTROY,
+  SAVE_STATE,
+  RESTORE_STATE
+}
@@ -0,0 +1,149 @@
+package mvp.presenter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link PresenterTimingSink} keeping a latency histogram per presenter class and callback.  Buckets are powers of two of
+ * nanoseconds so recording is a couple of atomic increments and memory stays fixed however many calls are made.
+ */
+public final class PresenterLatencyHistograms implements PresenterTimingSink {
+  static final int BUCKETS = 64;
+
+  private final ConcurrentMap<Class<? extends Presenter>, Recorder[]> recorders = new ConcurrentHashMap<>();
+
+  @Override
+  public void record(Class<? extends Presenter> presenterClass, PresenterCallback callback, long durationNanos) {
+    Recorder[] forClass = recorders.get(presenterClass);
+    if (forClass == null) {
+      Recorder[] created = new Recorder[PresenterCallback.values().length];
+      for (int i = 0; i < created.length; i++) {
+        created[i] = new Recorder();
+      }
+      forClass = recorders.putIfAbsent(presenterClass, created);
+      if (forClass == null) {
+        forClass = created;
+      }
+    }
+    forClass[callback.ordinal()].record(durationNanos);
+  }
+
+  public Set<Class<? extends Presenter>> getPresenterClasses() {
+    return Collections.unmodifiableSet(new HashSet<>(recorders.keySet()));
+  }
+
+  /**
+   * @return a snapshot of the timings, empty if nothing has been recorded
+   */
+  public Histogram getHistogram(Class<? extends Presenter> presenterClass, PresenterCallback callback) {
+    Recorder[] forClass = recorders.get(presenterClass);
+    if (forClass == null) {
+      return new Histogram(new long[BUCKETS], 0, 0);
+    }
+    return forClass[callback.ordinal()].snapshot();
+  }
+
+  public void reset() {
+    recorders.clear();
+  }
+
+  static int bucket(long durationNanos) {
+    return durationNanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(durationNanos));
+  }
+
+  private static final class Recorder {
+    final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    final AtomicLong totalNanos = new AtomicLong();
+    final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long durationNanos) {
+      buckets.incrementAndGet(bucket(durationNanos));
+      totalNanos.addAndGet(durationNanos);
+      long max;
+      while (durationNanos > (max = maxNanos.get())) {
+        if (maxNanos.compareAndSet(max, durationNanos)) {
+          break;
+        }
+      }
+    }
+
+    Histogram snapshot() {
+      long[] counts = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] = buckets.get(i);
+      }
+      return new Histogram(counts, totalNanos.get(), maxNanos.get());
+    }
+  }
+
+  public static final class Histogram {
+    private final long[] buckets;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+
+    Histogram(long[] buckets, long totalNanos, long maxNanos) {
+      long count = 0;
+      for (long bucket : buckets) {
+        count += bucket;
+      }
+      this.buckets = buckets;
+      this.count = count;
+      this.totalNanos = totalNanos;
+      this.maxNanos = maxNanos;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    public long getMaxNanos() {
+      return maxNanos;
+    }
+
+    public long getMeanNanos() {
+      return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * @param percentile - between 0 and 100
+     * @return the upper bound of the bucket the percentile falls in, so accurate to within a factor of two
+     */
+    public long getPercentileNanos(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(count * percentile / 100d);
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i];
+        if (seen >= Math.max(1, rank)) {
+          return Math.min(maxNanos, i == 0 ? 0 : (1L << i) - 1);
+        }
+      }
+      return maxNanos;
+    }
+
+    /**
+     * @return calls per bucket, bucket i holds durations below 2^i nanoseconds and at least 2^(i-1)
+     */
+    public long[] getBucketCounts() {
+      return buckets.clone();
+    }
+
+    @Override
+    public String toString() {
+      return "Histogram{count=" + count + ", meanNanos=" + getMeanNanos() + ", p50Nanos=" + getPercentileNanos(50) + ", p99Nanos="
+          + getPercentileNanos(99) + ", maxNanos=" + maxNanos + "}";
+    }
+  }
+}
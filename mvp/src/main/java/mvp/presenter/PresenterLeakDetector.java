@@ -0,0 +1,167 @@
+package mvp.presenter;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Debug aid that checks views and presenters are actually let go of once the service is done with them.  Set one on
+ * {@link PresenterServiceImpl#setLeakDetector(PresenterLeakDetector)} and every dropped view and destroyed presenter is
+ * watched through a weak reference.  Anything still reachable after a garbage collection and the grace period is reported
+ * with the class of the presenter it belonged to, usually that presenter, a subclass field or a subscription is holding on
+ * to it.
+ *
+ * A dropped view is only a leak if nothing else wants it, which the detector can't know, so run {@link #check(boolean)} once
+ * the old activity has been destroyed, for example when the app goes idle or at the end of a test.  Not meant for release
+ * builds, watching allocates.
+ */
+public final class PresenterLeakDetector {
+  public static final long DEFAULT_GRACE_MILLIS = 5000;
+
+  private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+  private final Set<Watched> watched = new HashSet<>();
+  private final long graceMillis;
+  private final Clock clock;
+  private final Listener listener;
+
+  public PresenterLeakDetector(Listener listener) {
+    this(listener, DEFAULT_GRACE_MILLIS, Clock.SYSTEM);
+  }
+
+  /**
+   * @param graceMillis - how long something has to be watched before it can be reported
+   */
+  public PresenterLeakDetector(Listener listener, long graceMillis, Clock clock) {
+    if (graceMillis < 0) {
+      throw new IllegalArgumentException("grace period must not be negative");
+    }
+    this.listener = listener;
+    this.graceMillis = graceMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * @param kind - what the object was to the presenter
+   */
+  public synchronized void watch(Object object, Class<? extends Presenter> presenterClass, Kind kind) {
+    removeCollected();
+    watched.add(new Watched(object, queue, presenterClass, kind, clock.uptimeMillis()));
+  }
+
+  /**
+   * Reports everything watched for longer than the grace period that is still reachable, each is reported once
+   *
+   * @param gc - run a garbage collection first, otherwise only what the collector has already cleared is known to be gone
+   * @return the leaks found, also passed to the listener
+   */
+  public List<Leak> check(boolean gc) {
+    if (gc) {
+      Runtime.getRuntime().gc();
+      System.runFinalization();
+      Runtime.getRuntime().gc();
+    }
+    List<Leak> leaks = Collections.emptyList();
+    synchronized (this) {
+      removeCollected();
+      long now = clock.uptimeMillis();
+      for (Watched reference : new ArrayList<>(watched)) {
+        Object object = reference.get();
+        if (object != null && now - reference.watchedAtMillis >= graceMillis) {
+          watched.remove(reference);
+          if (leaks.isEmpty()) {
+            leaks = new ArrayList<>();
+          }
+          leaks.add(new Leak(object.getClass().getName(), reference.presenterClass, reference.kind, now - reference.watchedAtMillis));
+        }
+      }
+    }
+    for (int i = 0; i < leaks.size(); i++) {
+      listener.onLeak(leaks.get(i));
+    }
+    return leaks;
+  }
+
+  /**
+   * @return objects being watched that haven't been collected or reported yet
+   */
+  public synchronized int getWatchedCount() {
+    removeCollected();
+    return watched.size();
+  }
+
+  //callers hold this
+  private void removeCollected() {
+    Reference<?> collected;
+    while ((collected = queue.poll()) != null) {
+      watched.remove(collected);
+    }
+  }
+
+  public enum Kind {
+    DROPPED_VIEW,
+    DESTROYED_PRESENTER
+  }
+
+  public interface Listener {
+    /**
+     * Called on the thread running the check
+     */
+    void onLeak(Leak leak);
+  }
+
+  public static final class Leak {
+    private final String leakedClassName;
+    private final Class<? extends Presenter> presenterClass;
+    private final Kind kind;
+    private final long retainedMillis;
+
+    Leak(String leakedClassName, Class<? extends Presenter> presenterClass, Kind kind, long retainedMillis) {
+      this.leakedClassName = leakedClassName;
+      this.presenterClass = presenterClass;
+      this.kind = kind;
+      this.retainedMillis = retainedMillis;
+    }
+
+    public String getLeakedClassName() {
+      return leakedClassName;
+    }
+
+    public Class<? extends Presenter> getPresenterClass() {
+      return presenterClass;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    /**
+     * How long it has been reachable since the service let go of it
+     */
+    public long getRetainedMillis() {
+      return retainedMillis;
+    }
+
+    @Override
+    public String toString() {
+      return "Leak{" + kind + " " + leakedClassName + " of " + presenterClass.getName() + ", retainedMillis=" + retainedMillis + "}";
+    }
+  }
+
+  private static final class Watched extends WeakReference<Object> {
+    final Class<? extends Presenter> presenterClass;
+    final Kind kind;
+    final long watchedAtMillis;
+
+    Watched(Object object, ReferenceQueue<Object> queue, Class<? extends Presenter> presenterClass, Kind kind, long watchedAtMillis) {
+      super(object, queue);
+      this.presenterClass = presenterClass;
+      this.kind = kind;
+      this.watchedAtMillis = watchedAtMillis;
+    }
+  }
+}
@@ -5,9 +5,9 @@ import android.os.Bundle;
 public class PresenterLifecycleListenerImpl implements PresenterLifecycleListener {
 
   private final PresenterServiceInternal presenterService;
-  private final String id;
+  private final long id;
 
-  public PresenterLifecycleListenerImpl(PresenterServiceInternal presenterService, String id) {
+  public PresenterLifecycleListenerImpl(PresenterServiceInternal presenterService, long id) {
     this.presenterService = presenterService;
     this.id = id;
   }
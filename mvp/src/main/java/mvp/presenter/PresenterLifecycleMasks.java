@@ -0,0 +1,14 @@
+package mvp.presenter;
+
+/**
+ * A factory that knows which lifecycle callbacks the presenters it creates leave empty.  The generated factory implements
+ * it, and {@link PresenterServiceImpl} looks each presenter up once and then skips those callbacks.
+ */
+public interface PresenterLifecycleMasks {
+
+  /**
+   * @return the {@link LifecycleMask} bits for the presenter class, or {@link LifecycleMask#UNKNOWN} if it isn't one of this
+   * factory's
+   */
+  int getLifecycleMask(Class<? extends Presenter> presenterType);
+}
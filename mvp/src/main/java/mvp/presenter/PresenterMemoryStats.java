@@ -0,0 +1,73 @@
+package mvp.presenter;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Estimated memory held by the presenters in a {@link PresenterServiceImpl}, split between those with a view and those
+ * retained without one.  See {@link PresenterServiceImpl#getMemoryStats(PresenterSizeEstimator)}.
+ */
+public final class PresenterMemoryStats {
+  private final int attached;
+  private final long attachedBytes;
+  private final int detached;
+  private final long detachedBytes;
+  private final Map<Class<? extends Presenter>, Long> bytesByClass;
+  private final int inaccessibleFields;
+
+  PresenterMemoryStats(int attached, long attachedBytes, int detached, long detachedBytes,
+      Map<Class<? extends Presenter>, Long> bytesByClass, int inaccessibleFields) {
+    this.attached = attached;
+    this.attachedBytes = attachedBytes;
+    this.detached = detached;
+    this.detachedBytes = detachedBytes;
+    this.bytesByClass = Collections.unmodifiableMap(bytesByClass);
+    this.inaccessibleFields = inaccessibleFields;
+  }
+
+  /**
+   * Presenters with a view bound
+   */
+  public int getAttached() {
+    return attached;
+  }
+
+  public long getAttachedBytes() {
+    return attachedBytes;
+  }
+
+  /**
+   * Presenters kept without a view, waiting for theirs to come back
+   */
+  public int getDetached() {
+    return detached;
+  }
+
+  public long getDetachedBytes() {
+    return detachedBytes;
+  }
+
+  public long getTotalBytes() {
+    return attachedBytes + detachedBytes;
+  }
+
+  /**
+   * @return estimated bytes across all presenters of each class, attached or not
+   */
+  public Map<Class<? extends Presenter>, Long> getBytesByClass() {
+    return bytesByClass;
+  }
+
+  /**
+   * @see PresenterSizeEstimator#getInaccessibleFields()
+   */
+  public int getInaccessibleFields() {
+    return inaccessibleFields;
+  }
+
+  @Override
+  public String toString() {
+    return "PresenterMemoryStats{attached=" + attached + ", attachedBytes=" + attachedBytes + ", detached=" + detached
+        + ", detachedBytes=" + detachedBytes + ", inaccessibleFields=" + inaccessibleFields + "}";
+  }
+}
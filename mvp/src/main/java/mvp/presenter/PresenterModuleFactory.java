@@ -0,0 +1,18 @@
+package mvp.presenter;
+
+import java.util.List;
+
+/**
+ * The factory generated for one Gradle module's presenters.  {@link CompositePresenterFactory} merges the factories of an
+ * app's modules so they can be compiled separately.
+ */
+public interface PresenterModuleFactory extends PresenterTypeFactory {
+
+  /**
+   * @return the view type of each presenter in the module, the position of a view type is what {@link #createPresenterAt(int)}
+   * takes to create its presenter
+   */
+  List<Class<?>> getViewTypes();
+
+  Presenter createPresenterAt(int index);
+}
@@ -0,0 +1,169 @@
+package mvp.presenter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import mvp.presenter.PresenterServiceImpl.PresenterNode;
+
+/**
+ * Open addressing map of presenter handle to {@link PresenterNode}.  Handles are never {@link PresenterServiceImpl#NO_PRESENTER_ID}
+ * so that value marks an empty slot, which keeps lookups free of boxing and allocation.
+ *
+ * The registry also keeps the parent to children index, a node put with a parent id is added to that parent's children and
+ * removed from them again when it leaves the registry.
+ *
+ * Lookups are lock free and may run on any thread, writers are serialised on the registry.  Handles are never reused so a
+ * removed entry keeps its key with a null value until the next resize, that way a reader never sees an entry move underneath it.
+ */
+final class PresenterRegistry {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private volatile Table table = new Table(INITIAL_CAPACITY);
+  private volatile int size;
+  //live entries plus removed entries still holding their slot
+  private int used;
+
+  PresenterNode get(long id) {
+    if (id == PresenterServiceImpl.NO_PRESENTER_ID) {
+      return null;
+    }
+    Table table = this.table;
+    int mask = table.mask;
+    int i = index(id, mask);
+    long key;
+    while ((key = table.keys.get(i)) != PresenterServiceImpl.NO_PRESENTER_ID) {
+      if (key == id) {
+        return table.values.get(i);
+      }
+      i = (i + 1) & mask;
+    }
+    return null;
+  }
+
+  boolean containsKey(long id) {
+    return get(id) != null;
+  }
+
+  synchronized void put(long id, PresenterNode node) {
+    if (id == PresenterServiceImpl.NO_PRESENTER_ID) {
+      throw new IllegalArgumentException("invalid presenter id " + id);
+    }
+    if ((used + 1) * 4 > table.keys.length() * 3) {
+      resize();
+    }
+    PresenterNode previous = insert(table, id, node);
+    if (previous != null) {
+      unlink(previous);
+    } else {
+      size++;
+    }
+
+    PresenterNode parent = get(node.getParentId());
+    if (parent != null) {
+      parent.addChild(node);
+    }
+  }
+
+  synchronized PresenterNode remove(long id) {
+    if (id == PresenterServiceImpl.NO_PRESENTER_ID) {
+      return null;
+    }
+    Table table = this.table;
+    int mask = table.mask;
+    int i = index(id, mask);
+    long key;
+    while ((key = table.keys.get(i)) != id) {
+      if (key == PresenterServiceImpl.NO_PRESENTER_ID) {
+        return null;
+      }
+      i = (i + 1) & mask;
+    }
+    PresenterNode removed = table.values.getAndSet(i, null);
+    if (removed == null) {
+      return null;
+    }
+    size--;
+
+    unlink(removed);
+    return removed;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return a snapshot of the nodes, taken without locking so one added or removed meanwhile may or may not be in it
+   */
+  List<PresenterNode> values() {
+    Table table = this.table;
+    List<PresenterNode> values = new ArrayList<>(size);
+    for (int i = 0; i < table.keys.length(); i++) {
+      PresenterNode node = table.values.get(i);
+      if (node != null) {
+        values.add(node);
+      }
+    }
+    return values;
+  }
+
+  private PresenterNode insert(Table table, long id, PresenterNode node) {
+    int mask = table.mask;
+    int i = index(id, mask);
+    long key;
+    while ((key = table.keys.get(i)) != PresenterServiceImpl.NO_PRESENTER_ID) {
+      if (key == id) {
+        return table.values.getAndSet(i, node);
+      }
+      i = (i + 1) & mask;
+    }
+    //value first, a reader that finds the key is guaranteed to see it
+    table.values.set(i, node);
+    table.keys.set(i, id);
+    used++;
+    return null;
+  }
+
+  private void unlink(PresenterNode node) {
+    PresenterNode parent = get(node.getParentId());
+    if (parent != null) {
+      parent.removeChild(node);
+    }
+  }
+
+  private void resize() {
+    Table old = table;
+    int capacity = old.keys.length();
+    //only grow when the live entries need it, otherwise rebuilding just drops the removed ones
+    if ((size + 1) * 2 > capacity) {
+      capacity *= 2;
+    }
+    Table resized = new Table(capacity);
+    used = 0;
+    for (int i = 0; i < old.keys.length(); i++) {
+      PresenterNode value = old.values.get(i);
+      if (value != null) {
+        insert(resized, old.keys.get(i), value);
+      }
+    }
+    table = resized;
+  }
+
+  private static int index(long id, int mask) {
+    return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+  }
+
+  private static final class Table {
+    final AtomicLongArray keys;
+    final AtomicReferenceArray<PresenterNode> values;
+    final int mask;
+
+    Table(int capacity) {
+      keys = new AtomicLongArray(capacity);
+      values = new AtomicReferenceArray<>(capacity);
+      mask = capacity - 1;
+    }
+  }
+}
@@ -10,4 +10,6 @@ public interface PresenterService {
   void takeView(MVPView view, Bundle bundle);
 
   void takeChild(MVPView view);
+
+  void takeChild(MVPView view, MVPView parentView);
 }
@@ -3,11 +3,24 @@ package mvp.presenter;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import mvp.MVPView;
 
@@ -17,17 +30,198 @@ import mvp.MVPView;
  * Basefragment or BaseActivity should manage this.  Thats it! Your presenter is ready to go and auto managed.
  *
  * Works whether you have set a parentPresenter or not, this is good when you want to have dumb activities.
+ *
+ * The service is thread safe so children can be bound or dropped from a background thread.  Looking up a presenter never takes
+ * a lock, adding and removing presenters is serialised, and each presenter's callbacks are made while holding its node so
+ * they are delivered in order and never after it has been destroyed.
  */
 public class PresenterServiceImpl implements PresenterService, PresenterServiceInternal {
   static final String PRESENTER_ID_KEY = "com.joincoup.app.presentation.PRESENTER_ID_KEY;";
-  static final String NO_PRESENTER_ID = "";
+  static final String PRESENTER_EPOCH_KEY = "com.joincoup.app.presentation.PRESENTER_EPOCH_KEY;";
+  static final String PRESENTER_STATE_KEY = "com.joincoup.app.presentation.PRESENTER_STATE_KEY;";
+  static final String PRESENTER_STORED_STATE_KEY = "com.joincoup.app.presentation.PRESENTER_STORED_STATE_KEY;";
+  static final long NO_PRESENTER_ID = 0;
 
-  Map<String, PresenterNode> presenters = new HashMap<>();
-  String currentParentId;
+  final PresenterRegistry presenters = new PresenterRegistry();
+  //handles restart from 1 in a new process, the epoch stops a saved handle matching a different presenter after process death
+  final long epoch = System.currentTimeMillis();
+  volatile long currentParentId;
+  private final AtomicLong lastPresenterId = new AtomicLong(NO_PRESENTER_ID);
+  private final Object lock = new Object();
+  //which node each bound view belongs to, only ever locked on its own
+  private final Map<MVPView, PresenterNode> boundViews = new IdentityHashMap<>();
+  private final RetainedPresenterCache retainedPresenters;
   private PresenterFactory presenterFactory;
+  private volatile boolean lazyBinding;
+  private volatile Executor destroyExecutor;
+  private volatile PresenterTimingSink timingSink = PresenterTimingSink.NONE;
+  private volatile PresenterSnapshotSink snapshotSink = PresenterSnapshotSink.NONE;
+  private volatile PresenterStateStore stateStore;
+  private volatile int spillThresholdBytes;
+  private volatile PrewarmedPresenters prewarmed;
+  private volatile PresenterLeakDetector leakDetector;
+  private final Object destroyLock = new Object();
+  //guarded by destroyLock
+  private int pendingDestroys;
 
   public PresenterServiceImpl(PresenterFactory presenterFactory) {
+    this(presenterFactory, RetainedPresenterCache.unbounded());
+  }
+
+  /**
+   * @param retainedPresenters - bounds how many presenters are kept for views dropped with retain, and for how long
+   */
+  public PresenterServiceImpl(PresenterFactory presenterFactory, RetainedPresenterCache retainedPresenters) {
     this.presenterFactory = presenterFactory;
+    this.retainedPresenters = retainedPresenters;
+  }
+
+  /**
+   * When lazy, taking a view only registers it and the presenter is created the first time the view reports
+   * onViewReady or onResume (or the presenter is asked for).  Views that are created but never shown, such as off screen
+   * fragments in a ViewPager, then cost nothing.
+   */
+  public void setLazyBinding(boolean lazyBinding) {
+    this.lazyBinding = lazyBinding;
+  }
+
+  /**
+   * Destroying presenters often means closing cursors and releasing caches, with an executor set views are still dropped
+   * straight away but {@link Presenter#destroy()} is called on the executor, once per teardown for all the presenters in it.
+   *
+   * @param destroyExecutor - executor to destroy on, or null to destroy on the calling thread
+   */
+  public void setDestroyExecutor(@Nullable Executor destroyExecutor) {
+    this.destroyExecutor = destroyExecutor;
+  }
+
+  /**
+   * Times every call made on presenters, creation included, and reports it per presenter class.
+   *
+   * @param timingSink - where timings go, {@link PresenterTimingSink#NONE} to turn timing off
+   */
+  public void setTimingSink(PresenterTimingSink timingSink) {
+    this.timingSink = timingSink == null ? PresenterTimingSink.NONE : timingSink;
+  }
+
+  /**
+   * @param snapshotSink - where the size of each {@link RetainedState} snapshot goes, {@link PresenterSnapshotSink#NONE} to stop
+   * measuring
+   */
+  public void setSnapshotSink(PresenterSnapshotSink snapshotSink) {
+    this.snapshotSink = snapshotSink == null ? PresenterSnapshotSink.NONE : snapshotSink;
+  }
+
+  /**
+   * Watches every view dropped and presenter destroyed from now on, for debug builds.
+   *
+   * @param leakDetector - the detector to report to, null to stop watching
+   */
+  public void setLeakDetector(@Nullable PresenterLeakDetector leakDetector) {
+    this.leakDetector = leakDetector;
+  }
+
+  /**
+   * Snapshots bigger than the threshold are written to the store and only their key goes in the Bundle, so presenters with
+   * a lot of state don't push the saved instance state past the binder transaction limit.
+   *
+   * @param stateStore - where to put large snapshots, or null to keep every snapshot in the Bundle
+   */
+  public void setStateStore(@Nullable PresenterStateStore stateStore, int spillThresholdBytes) {
+    this.spillThresholdBytes = spillThresholdBytes;
+    this.stateStore = stateStore;
+  }
+
+  /**
+   * Lets presenters be built ahead of their view with {@link #prewarm(Class)}.  Pass an executor that runs on a background
+   * thread, or one that posts to an idle handler, so prewarming never competes with the frame being drawn.
+   *
+   * @param executor - builds prewarmed presenters, null turns prewarming off and destroys any waiting
+   * @param timeoutMillis - how long a prewarmed presenter waits for its view before it is destroyed
+   */
+  public void setPrewarmExecutor(@Nullable Executor executor, long timeoutMillis) {
+    setPrewarmExecutor(executor, timeoutMillis, Clock.SYSTEM);
+  }
+
+  public void setPrewarmExecutor(@Nullable Executor executor, long timeoutMillis, Clock clock) {
+    setPrewarmExecutor(executor, timeoutMillis, clock, PrewarmedPresenters.defaultExpiryScheduler());
+  }
+
+  /**
+   * @param expiryScheduler - checks for expired presenters once each has waited the timeout, so an unclaimed presenter is
+   * destroyed even if no view is taken again.  They are destroyed on the destroy executor if there is one, otherwise on the
+   * prewarm executor, or on the scheduler's thread if that refuses them.  The others share a daemon thread.
+   */
+  public void setPrewarmExecutor(@Nullable Executor executor, long timeoutMillis, Clock clock, ScheduledExecutorService expiryScheduler) {
+    PrewarmedPresenters previous = prewarmed;
+    prewarmed = executor == null ? null : new PrewarmedPresenters(executor, timeoutMillis, clock, expiryScheduler);
+    if (previous != null) {
+      destroyUnbound(previous.clear());
+    }
+  }
+
+  /**
+   * Builds the presenter for a view type on the prewarm executor, so the screen about to be shown gets it from the next
+   * matching takeView or takeChild instead of creating one.  Presenters implementing {@link Prewarmable} start loading as
+   * soon as they are built.  Call it when navigation to the screen is likely, it does nothing if one is already prewarmed.
+   *
+   * @param viewType - the concrete class of the view that will be bound
+   */
+  public void prewarm(final Class<? extends MVPView> viewType) {
+    final PrewarmedPresenters pool = prewarmed;
+    if (pool == null) {
+      throw new IllegalStateException("set a prewarm executor first");
+    }
+    if (!(presenterFactory instanceof PresenterTypeFactory)) {
+      throw new IllegalStateException("presenter factory can't create presenters by view type");
+    }
+    if (!pool.reserve(viewType)) {
+      return;
+    }
+    try {
+      pool.executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          Presenter presenter;
+          try {
+            presenter = createPresenterForType(viewType);
+            if (presenter instanceof Prewarmable) {
+              ((Prewarmable) presenter).onPrewarm();
+            }
+          } catch (RuntimeException e) {
+            pool.cancel(viewType);
+            throw e;
+          }
+          if (!pool.offer(viewType, presenter)) {
+            //claimed before it was ready, or prewarming was turned off
+            destroyUnbound(Collections.singletonList(presenter));
+          } else {
+            scheduleExpiry(pool);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      pool.cancel(viewType);
+    }
+  }
+
+  /**
+   * Waits for presenters handed to the destroy executor to finish being destroyed, mostly useful in tests.
+   *
+   * @return false if the timeout passed first
+   */
+  public boolean awaitPendingDestroys(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (destroyLock) {
+      while (pendingDestroys > 0) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(destroyLock, remaining);
+      }
+    }
+    return true;
   }
 
   /**
@@ -41,56 +235,166 @@ public class PresenterServiceImpl implements PresenterService, PresenterServiceI
    * Call this when you initialise your activity
    */
   public void takeView(MVPView view, Bundle bundle) {
-    PresenterNode presenterNode;
-    if (!presenterAlreadyExists(bundle)) {
-      Presenter presenter = presenterFactory.createPresenter(view);
-      presenterNode = new PresenterNode(presenter);
+    //maybe the app has been killed and so we don't have our presenters anymore!
+    PresenterNode presenterNode = presenters.get(getPresenterIdFromBundle(bundle));
+    if (presenterNode != null && !retainedPresenters.reclaim(presenterNode)) {
+      //evicted while the view was away
+      presenterNode = null;
+    }
+    if (presenterNode == null) {
+      presenterNode = new PresenterNode(nextPresenterId(), lazyBinding ? null : createPresenter(view));
+      //a snapshot left by a presenter we no longer have, most likely the process was killed
+      if (bundle != null) {
+        presenterNode.pendingState = bundle.getByteArray(PRESENTER_STATE_KEY);
+        presenterNode.storedStateKey = bundle.getLong(PRESENTER_STORED_STATE_KEY);
+        presenterNode.storedStatePending = presenterNode.storedStateKey != PresenterStateStore.NO_KEY;
+        if (presenterNode.node != null) {
+          restorePendingState(presenterNode, presenterNode.node);
+        }
+      }
       presenters.put(presenterNode.id, presenterNode);
-    } else {
-      presenterNode = getPresenterFromBundle(bundle);
     }
-    PresenterLifecycleListenerImpl presenterLifecycleListener = new PresenterLifecycleListenerImpl(this, presenterNode.id);
-    presenterNode.node.takeView(view);
+    PresenterLifecycleListener presenterLifecycleListener;
+    synchronized (presenterNode) {
+      bindView(presenterNode, view);
+      presenterLifecycleListener = getLifecycleListener(presenterNode);
+    }
     view.setLifecycleListener(presenterLifecycleListener);
     currentParentId = presenterNode.id;
+
+    destroyTrees(retainedPresenters.evictExpired());
+    evictExpiredPrewarmed();
   }
 
   /**
-   * Called by fragments
+   * Called by fragments, the presenter is a child of the current parent
    */
   public void takeChild(MVPView view) {
-    Presenter presenter = presenterFactory.createPresenter(view);
-    PresenterNode child = new PresenterNode(presenter, currentParentId);
-    presenters.put(child.id, child);
-    PresenterLifecycleListenerImpl presenterLifecycleListener = new PresenterLifecycleListenerImpl(this, child.id);
-    presenter.takeView(view);
+    takeChild(view, currentParentId);
+  }
+
+  /**
+   * Called by nested fragments, the presenter becomes a child of parentView's presenter and is destroyed along with it
+   *
+   * @param parentView - a view already bound with takeView or takeChild
+   */
+  public void takeChild(MVPView view, MVPView parentView) {
+    PresenterNode parent;
+    synchronized (boundViews) {
+      parent = boundViews.get(parentView);
+    }
+    if (parent == null) {
+      throw new IllegalStateException("parent view has no presenter, bind it before its children");
+    }
+    takeChild(view, parent.id);
+  }
+
+  private void takeChild(MVPView view, long parentId) {
+    Presenter presenter = lazyBinding ? null : createPresenter(view);
+    PresenterNode child = new PresenterNode(nextPresenterId(), presenter, parentId);
+    //a parent being destroyed at the same time either takes this child with it or is already gone
+    synchronized (lock) {
+      presenters.put(child.id, child);
+    }
+    PresenterLifecycleListener presenterLifecycleListener;
+    synchronized (child) {
+      bindView(child, view);
+      presenterLifecycleListener = getLifecycleListener(child);
+    }
     view.setLifecycleListener(presenterLifecycleListener);
   }
 
-  public void onPresenterViewResumed(String id) {
-    if (presenters.containsKey(id)) {
-      PresenterNode node = presenters.get(id);
+  public void onPresenterViewResumed(long id) {
+    PresenterNode node = presenters.get(id);
+    if (node != null) {
       if (node.isParent) {
         currentParentId = id;
       }
-      node.getPresenter().onResume();
+      dispatch(node, PresenterCallback.RESUME, false);
+    }
+  }
+
+  public void onPresenterViewPaused(long id) {
+    PresenterNode node = presenters.get(id);
+    if (node != null) {
+      dispatch(node, PresenterCallback.PAUSE, false);
     }
   }
 
-  public void onPresenterViewPaused(String id) {
-    if (presenters.containsKey(id)) {
-      PresenterNode node = presenters.get(id);
-      node.getPresenter().onPause();
+  public void onPresenterViewReady(long id) {
+    PresenterNode node = presenters.get(id);
+    if (node != null) {
+      dispatch(node, PresenterCallback.VIEW_READY, false);
     }
   }
 
-  public void onPresenterViewReady(String id) {
-    if (presenters.containsKey(id)) {
-      PresenterNode node = presenters.get(id);
-      node.getPresenter().onViewReady();
+  /**
+   * Delivers a lifecycle callback to the presenter bound to view and every presenter below it that has a view, depth first.
+   * Resume and view ready reach parents before their children, pause reaches children before their parents.
+   *
+   * @param callback - {@link PresenterCallback#RESUME}, {@link PresenterCallback#PAUSE} or {@link PresenterCallback#VIEW_READY}
+   */
+  public void dispatchToSubtree(MVPView view, PresenterCallback callback) {
+    if (callback != PresenterCallback.RESUME && callback != PresenterCallback.PAUSE && callback != PresenterCallback.VIEW_READY) {
+      throw new IllegalArgumentException("not a lifecycle callback " + callback);
+    }
+    PresenterNode node;
+    synchronized (boundViews) {
+      node = boundViews.get(view);
+    }
+    if (node != null) {
+      dispatchToSubtree(node, callback);
+    }
+  }
+
+  private void dispatchToSubtree(PresenterNode node, PresenterCallback callback) {
+    if (callback != PresenterCallback.PAUSE) {
+      dispatch(node, callback, true);
+    }
+    List<PresenterNode> children = node.getChildren();
+    for (int i = 0; i < children.size(); i++) {
+      dispatchToSubtree(children.get(i), callback);
+    }
+    if (callback == PresenterCallback.PAUSE) {
+      dispatch(node, callback, true);
     }
   }
 
+  /**
+   * @param boundOnly - skip the presenter if it has no view
+   */
+  private void dispatch(PresenterNode node, PresenterCallback callback, boolean boundOnly) {
+    synchronized (node) {
+      if (boundOnly && node.boundView == null) {
+        return;
+      }
+      Presenter presenter;
+      if (callback == PresenterCallback.PAUSE) {
+        //never paused before it was resumed, so a lazy presenter that doesn't exist yet has nothing to pause
+        presenter = node.destroyed ? null : node.node;
+      } else {
+        presenter = materialize(node);
+      }
+      if (presenter != null && LifecycleMask.includes(getLifecycleMask(node, presenter), callback)) {
+        call(presenter, callback, null);
+      }
+    }
+  }
+
+  /**
+   * Looked up the first time the presenter gets a lifecycle callback, a node's presenter never changes once created.
+   * Callers hold the node.
+   */
+  private int getLifecycleMask(PresenterNode node, Presenter presenter) {
+    if (!node.lifecycleMaskKnown) {
+      node.lifecycleMask = presenterFactory instanceof PresenterLifecycleMasks
+          ? ((PresenterLifecycleMasks) presenterFactory).getLifecycleMask(presenter.getClass())
+          : LifecycleMask.UNKNOWN;
+      node.lifecycleMaskKnown = true;
+    }
+    return node.lifecycleMask;
+  }
+
   @Nullable
   @Override
   public Presenter getCurrentParent() {
@@ -101,112 +405,681 @@ public class PresenterServiceImpl implements PresenterService, PresenterServiceI
    * @param id - id of presenter to drop
    * @param retain - keep the presenter around in case we reattach - for activities
    */
-  public void dropView(String id, boolean retain) {
-    if (!presenters.containsKey(id)) {
+  public void dropView(long id, boolean retain) {
+    PresenterNode presenterNode = presenters.get(id);
+    if (presenterNode == null) {
       return;
     }
 
-    PresenterNode presenterNode = presenters.get(id);
-
     if (!retain) {
-      //KILL
-      List<String> toDestroy = new ArrayList<>();
-      toDestroy.add(presenterNode.id);
-      if (presenterNode.isParent) {
-        //find children to kill
-        for (PresenterNode node : presenters.values()) {
-          if (!node.isParent && node.parentId.equals(id)) {
-            toDestroy.add(node.id);
+      //KILL, marked destroyed first so a save writing to the store meanwhile removes what it wrote
+      destroyTree(presenterNode);
+      discardStoredState(presenterNode);
+    } else {
+      synchronized (presenterNode) {
+        dropView(presenterNode);
+      }
+      destroyTrees(retainedPresenters.retain(presenterNode));
+    }
+  }
+
+  /**
+   * Evicts retained presenters according to the memory pressure, forward ComponentCallbacks2.onTrimMemory from your
+   * Application.  Presenters with a view are never evicted.
+   */
+  public void onTrimMemory(int level) {
+    destroyTrees(retainedPresenters.trimMemory(level));
+    //only ever a guess, so the first to go
+    PrewarmedPresenters pool = prewarmed;
+    if (pool != null) {
+      destroyUnbound(pool.clear());
+    }
+  }
+
+  /**
+   * Destroys retained presenters that have been without a view for longer than the cache allows.  This also happens whenever
+   * a view is taken or retained.
+   */
+  public void evictExpiredPresenters() {
+    destroyTrees(retainedPresenters.evictExpired());
+    evictExpiredPrewarmed();
+  }
+
+  private void scheduleExpiry(final PrewarmedPresenters pool) {
+    try {
+      pool.expiryScheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          //a pool that has been replaced was cleared, there is nothing left in it to expire
+          List<Presenter> expired = pool.evictExpired();
+          if (!expired.isEmpty()) {
+            //not on the shared expiry thread, on the destroy executor or else the one they were built on
+            Executor executor = destroyExecutor;
+            submitDestroyBatch(executor != null ? executor : pool.executor, expired);
           }
         }
+      }, pool.timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      //left for the next view taken or evictExpiredPresenters
+    }
+  }
+
+  private void evictExpiredPrewarmed() {
+    PrewarmedPresenters pool = prewarmed;
+    if (pool != null) {
+      destroyUnbound(pool.evictExpired());
+    }
+  }
+
+  public RetainedPresenterCache.Stats getRetainedPresenterStats() {
+    return retainedPresenters.getStats();
+  }
+
+  /**
+   * Walks every presenter to estimate what it holds, so it is slow with many presenters.  Call it from a debug screen or when
+   * deciding on a retained byte budget, not on every frame.  Lazily bound presenters that haven't been created hold nothing.
+   */
+  public PresenterMemoryStats getMemoryStats(PresenterSizeEstimator estimator) {
+    int attached = 0;
+    long attachedBytes = 0;
+    int detached = 0;
+    long detachedBytes = 0;
+    Map<Class<? extends Presenter>, Long> bytesByClass = new HashMap<>();
+    List<PresenterNode> nodes = presenters.values();
+    for (int i = 0; i < nodes.size(); i++) {
+      PresenterNode node = nodes.get(i);
+      Presenter presenter;
+      boolean hasView;
+      synchronized (node) {
+        presenter = node.destroyed ? null : node.node;
+        hasView = node.boundView != null || (presenter != null && presenter.getView() != null);
       }
-      destroyPresenters(toDestroy);
+      if (presenter == null) {
+        continue;
+      }
+      //outside the node so the walk doesn't hold up its callbacks
+      long bytes = estimator.estimate(presenter);
+      if (hasView) {
+        attached++;
+        attachedBytes += bytes;
+      } else {
+        detached++;
+        detachedBytes += bytes;
+      }
+      Long classBytes = bytesByClass.get(presenter.getClass());
+      bytesByClass.put(presenter.getClass(), classBytes == null ? bytes : classBytes + bytes);
+    }
+    return new PresenterMemoryStats(attached, attachedBytes, detached, detachedBytes, bytesByClass, estimator.getInaccessibleFields());
+  }
+
+  private Presenter createPresenter(MVPView view) {
+    PrewarmedPresenters pool = prewarmed;
+    if (pool != null) {
+      Presenter presenter = pool.claim(view);
+      if (presenter != null) {
+        return presenter;
+      }
+    }
+    PresenterTimingSink sink = timingSink;
+    if (sink == PresenterTimingSink.NONE) {
+      return presenterFactory.createPresenter(view);
+    }
+    long start = System.nanoTime();
+    Presenter presenter = presenterFactory.createPresenter(view);
+    sink.record(presenter.getClass(), PresenterCallback.CREATE, System.nanoTime() - start);
+    return presenter;
+  }
+
+  private Presenter createPresenterForType(Class<? extends MVPView> viewType) {
+    PresenterTypeFactory factory = (PresenterTypeFactory) presenterFactory;
+    PresenterTimingSink sink = timingSink;
+    if (sink == PresenterTimingSink.NONE) {
+      return factory.createPresenterForType(viewType);
+    }
+    long start = System.nanoTime();
+    Presenter presenter = factory.createPresenterForType(viewType);
+    sink.record(presenter.getClass(), PresenterCallback.CREATE, System.nanoTime() - start);
+    return presenter;
+  }
+
+  private void call(Presenter presenter, PresenterCallback callback, MVPView view) {
+    PresenterTimingSink sink = timingSink;
+    if (sink == PresenterTimingSink.NONE) {
+      invoke(presenter, callback, view);
     } else {
-      dropView(presenterNode.getPresenter());
+      long start = System.nanoTime();
+      try {
+        invoke(presenter, callback, view);
+      } finally {
+        sink.record(presenter.getClass(), callback, System.nanoTime() - start);
+      }
+    }
+    PresenterLeakDetector detector = leakDetector;
+    if (detector != null && callback == PresenterCallback.DESTROY) {
+      detector.watch(presenter, presenter.getClass(), PresenterLeakDetector.Kind.DESTROYED_PRESENTER);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void invoke(Presenter presenter, PresenterCallback callback, MVPView view) {
+    switch (callback) {
+      case TAKE_VIEW:
+        presenter.takeView(view);
+        break;
+      case VIEW_READY:
+        presenter.onViewReady();
+        break;
+      case RESUME:
+        presenter.onResume();
+        break;
+      case PAUSE:
+        presenter.onPause();
+        break;
+      case DROP_VIEW:
+        presenter.dropView();
+        break;
+      case DESTROY:
+        try {
+          presenter.destroy();
+        } finally {
+          if (presenter instanceof ScopedPresenter) {
+            ((ScopedPresenter) presenter).getSubscriptions().unsubscribe();
+          }
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("not a presenter call " + callback);
+    }
+  }
+
+  /**
+   * Each node has one listener for its whole life, so rebinding after a configuration change hands the same one back
+   * rather than allocating.  Callers hold the node.
+   */
+  private PresenterLifecycleListener getLifecycleListener(PresenterNode node) {
+    if (node.listener == null) {
+      node.listener = new PresenterLifecycleListenerImpl(this, node.id);
+    }
+    return node.listener;
+  }
+
+  //callers hold the node
+  private void bindView(PresenterNode node, MVPView view) {
+    node.boundView = view;
+    synchronized (boundViews) {
+      boundViews.put(view, node);
+    }
+    if (node.node != null) {
+      call(node.node, PresenterCallback.TAKE_VIEW, view);
+    } else if (!lazyBinding) {
+      materialize(node);
+    }
+  }
+
+  /**
+   * Creates a lazily bound presenter and gives it its view, callers hold the node
+   *
+   * @return the presenter, or null if it has been destroyed or there is no view to create it for
+   */
+  private Presenter materialize(PresenterNode node) {
+    if (node.destroyed) {
+      return null;
+    }
+    if (node.node == null && node.boundView != null) {
+      Presenter presenter = createPresenter(node.boundView);
+      restorePendingState(node, presenter);
+      call(presenter, PresenterCallback.TAKE_VIEW, node.boundView);
+      node.node = presenter;
+    }
+    return node.node;
+  }
+
+  //callers hold the node
+  private void dropView(PresenterNode node) {
+    MVPView view = node.boundView;
+    Presenter presenter = node.node;
+    if (view != null) {
+      node.boundView = null;
+      synchronized (boundViews) {
+        if (boundViews.get(view) == node) {
+          boundViews.remove(view);
+        }
+      }
+      if (node.node == null) {
+        //lazily bound and never shown
+        view.setLifecycleListener(null);
+      }
+    }
+    if (presenter != null && presenter.getView() != null) {
+      view = presenter.getView();
+      view.setLifecycleListener(null);
+      call(presenter, PresenterCallback.DROP_VIEW, null);
+    }
+    PresenterLeakDetector detector = leakDetector;
+    if (detector != null && view != null) {
+      detector.watch(view, presenter == null ? Presenter.class : presenter.getClass(), PresenterLeakDetector.Kind.DROPPED_VIEW);
+    }
+  }
+
+  private void destroyTrees(List<PresenterNode> nodes) {
+    for (int i = 0; i < nodes.size(); i++) {
+      destroyTree(nodes.get(i));
     }
   }
 
-  private void dropView(Presenter presenter) {
-    if (presenter.getView() != null) {
-      presenter.getView().setLifecycleListener(null);
-      presenter.dropView();
+  /**
+   * Destroys the presenter and everything below it, children before their parents
+   */
+  private void destroyTree(PresenterNode presenterNode) {
+    synchronized (lock) {
+      if (presenters.remove(presenterNode.id) == null) {
+        //someone else got there first
+        return;
+      }
+      removeDescendants(presenterNode);
+    }
+
+    Executor executor = destroyExecutor;
+    List<Presenter> toDestroy = executor == null ? null : new ArrayList<Presenter>();
+    destroySubtree(presenterNode, toDestroy);
+
+    if (toDestroy != null && !toDestroy.isEmpty()) {
+      submitDestroyBatch(executor, toDestroy);
+    }
+  }
+
+  /**
+   * Destroys presenters that never had a view or a node, such as unclaimed prewarmed ones
+   */
+  private void destroyUnbound(List<Presenter> toDestroy) {
+    if (toDestroy.isEmpty()) {
+      return;
+    }
+    Executor executor = destroyExecutor;
+    if (executor != null) {
+      submitDestroyBatch(executor, toDestroy);
+      return;
+    }
+    for (int i = 0; i < toDestroy.size(); i++) {
+      call(toDestroy.get(i), PresenterCallback.DESTROY, null);
     }
   }
 
-  private void destroyPresenters(List<String> ids) {
-    for (String id : ids) {
-      Presenter presenter = getPresenter(id);
-      dropView(presenter);
-      presenter.destroy();
-      presenters.remove(id);
+  private void submitDestroyBatch(Executor executor, List<Presenter> toDestroy) {
+    synchronized (destroyLock) {
+      pendingDestroys++;
+    }
+    DestroyBatch batch = new DestroyBatch(toDestroy);
+    try {
+      executor.execute(batch);
+    } catch (RejectedExecutionException e) {
+      batch.run();
+    }
+  }
 
-      if (id.equals(currentParentId)) {
-        currentParentId = NO_PRESENTER_ID;
+  /**
+   * Parents leave the registry before their children, so removing a child leaves its parent's list of children alone for
+   * the teardown to walk.  Callers hold the lock.
+   */
+  private void removeDescendants(PresenterNode node) {
+    List<PresenterNode> children = node.getChildren();
+    for (int i = 0; i < children.size(); i++) {
+      PresenterNode child = children.get(i);
+      presenters.remove(child.id);
+      removeDescendants(child);
+    }
+  }
+
+  private void destroySubtree(PresenterNode node, @Nullable List<Presenter> toDestroy) {
+    List<PresenterNode> children = node.getChildren();
+    for (int i = 0; i < children.size(); i++) {
+      destroySubtree(children.get(i), toDestroy);
+    }
+    destroyPresenter(node, toDestroy);
+  }
+
+  /**
+   * @param toDestroy - collects the presenter to destroy later, or null to destroy it now
+   */
+  private void destroyPresenter(PresenterNode node, @Nullable List<Presenter> toDestroy) {
+    retainedPresenters.remove(node);
+    synchronized (node) {
+      dropView(node);
+      //no more callbacks are delivered once this is set, so destroy can safely happen later on another thread
+      node.destroyed = true;
+      if (node.node != null) {
+        if (toDestroy == null) {
+          call(node.node, PresenterCallback.DESTROY, null);
+        } else {
+          toDestroy.add(node.node);
+        }
       }
     }
+
+    if (node.id == currentParentId) {
+      currentParentId = NO_PRESENTER_ID;
+    }
   }
 
-  public Presenter getPresenter(String id) {
-    if (presenters.containsKey(id)) {
-      return presenters.get(id).node;
+  /**
+   * A lazily bound presenter is created by this if it has a view, otherwise null is returned until one is taken
+   */
+  public Presenter getPresenter(long id) {
+    PresenterNode node = presenters.get(id);
+    if (node != null) {
+      Presenter presenter = node.node;
+      if (presenter != null) {
+        return presenter;
+      }
+      synchronized (node) {
+        return materialize(node);
+      }
     }
     throw new RuntimeException("presenter does not exist!" + id);
   }
 
-  public void savePresenter(String id, Bundle bundle) {
-    if (presenters.containsKey(id) && presenters.get(id).isParent) {
-      bundle.putString(PRESENTER_ID_KEY, id);
+  public void savePresenter(long id, Bundle bundle) {
+    PresenterNode node = presenters.get(id);
+    if (node != null && node.isParent) {
+      bundle.putLong(PRESENTER_ID_KEY, id);
+      bundle.putLong(PRESENTER_EPOCH_KEY, epoch);
+
+      byte[] snapshot = null;
+      long storedStateKey = PresenterStateStore.NO_KEY;
+      PresenterStateStore store = null;
+      long previousKey = PresenterStateStore.NO_KEY;
+      synchronized (node) {
+        if (!node.destroyed) {
+          if (node.node == null) {
+            //a lazy presenter that was never shown passes on the snapshot it was given
+            snapshot = node.pendingState;
+            storedStateKey = node.storedStatePending ? node.storedStateKey : PresenterStateStore.NO_KEY;
+          } else {
+            snapshot = saveState(node.node);
+            store = stateStore;
+            if (store != null) {
+              //handed back by storeState, so a destroy meanwhile has nothing of ours to discard
+              previousKey = node.storedStateKey;
+              node.storedStateKey = PresenterStateStore.NO_KEY;
+            }
+          }
+        }
+      }
+      if (store != null) {
+        //outside the node so the disk write doesn't hold up its callbacks
+        boolean spill = snapshot != null && snapshot.length > spillThresholdBytes;
+        storedStateKey = storeState(store, node, previousKey, spill ? snapshot : null);
+        if (spill) {
+          //stored, or the store failed and it is still too big for the bundle
+          snapshot = null;
+        }
+      }
+      if (storedStateKey != PresenterStateStore.NO_KEY) {
+        bundle.putLong(PRESENTER_STORED_STATE_KEY, storedStateKey);
+      } else if (snapshot != null) {
+        bundle.putByteArray(PRESENTER_STATE_KEY, snapshot);
+      }
     }
   }
 
-  private PresenterNode getPresenterFromBundle(Bundle bundle) {
-    if (bundle != null && bundle.containsKey(PRESENTER_ID_KEY)) {
-      //presenter already exists!
-      String id = bundle.getString(PRESENTER_ID_KEY);
-      if (presenters.containsKey(id)) {
-        return presenters.get(id);
+  /**
+   * Spills a large snapshot to the state store then gives the node back its key, callers don't hold the node
+   *
+   * @param previousKey - the key the node held, taken from it while its snapshot was saved
+   * @param snapshot - the snapshot to spill, or null if there's nothing to spill
+   * @return the key it was stored under, or {@link PresenterStateStore#NO_KEY} if it wasn't stored
+   */
+  private long storeState(PresenterStateStore store, PresenterNode node, long previousKey, @Nullable byte[] snapshot) {
+    long storedStateKey = PresenterStateStore.NO_KEY;
+    long keptKey = previousKey;
+    try {
+      if (snapshot != null) {
+        storedStateKey = store.put(previousKey, snapshot);
+        keptKey = storedStateKey;
+      } else if (previousKey != PresenterStateStore.NO_KEY) {
+        //nothing to spill this time, so an older spilled snapshot is no longer wanted
+        store.remove(previousKey);
+        keptKey = PresenterStateStore.NO_KEY;
       }
+    } catch (IOException e) {
+      //better to lose the state than to blow the binder transaction limit
     }
-    throw new RuntimeException("app does not have the requested presenter");
+    if (keptKey == PresenterStateStore.NO_KEY) {
+      return storedStateKey;
+    }
+    boolean stale;
+    synchronized (node) {
+      //destroyed while the store was written, or another save got there first
+      stale = node.destroyed || node.storedStateKey != PresenterStateStore.NO_KEY;
+      if (!stale) {
+        node.storedStateKey = keptKey;
+      }
+    }
+    if (stale) {
+      try {
+        store.remove(keptKey);
+      } catch (IOException e) {
+        //left for compaction or clear
+      }
+      return PresenterStateStore.NO_KEY;
+    }
+    return storedStateKey;
   }
 
-  private boolean presenterAlreadyExists(Bundle bundle) {
-    if (bundle != null && bundle.containsKey(PRESENTER_ID_KEY)) {
-      //presenter already exists!
-      String id = bundle.getString(PRESENTER_ID_KEY);
-      if (presenters.containsKey(id)) {
-        return true;
+  private void discardStoredState(PresenterNode node) {
+    PresenterStateStore store = stateStore;
+    if (store == null) {
+      return;
+    }
+    long storedStateKey;
+    synchronized (node) {
+      storedStateKey = node.storedStateKey;
+      node.storedStateKey = PresenterStateStore.NO_KEY;
+    }
+    if (storedStateKey != PresenterStateStore.NO_KEY) {
+      try {
+        store.remove(storedStateKey);
+      } catch (IOException e) {
+        //left for compaction or clear
+      }
+    }
+  }
+
+  /**
+   * Restores the snapshot a new presenter was given, reading a stored one through the store's mapping.  Callers hold the
+   * node or haven't published it yet.
+   */
+  private void restorePendingState(PresenterNode node, Presenter presenter) {
+    if (node.pendingState != null) {
+      restoreState(presenter, new ByteArrayInputStream(node.pendingState));
+      node.pendingState = null;
+    } else if (node.storedStatePending) {
+      node.storedStatePending = false;
+      PresenterStateStore store = stateStore;
+      if (store != null) {
+        try {
+          InputStream in = store.open(node.storedStateKey);
+          if (in != null) {
+            restoreState(presenter, in);
+          }
+        } catch (IOException e) {
+          //the presenter starts from scratch
+        }
+      }
+    }
+  }
+
+  /**
+   * The snapshot starts with the presenter class so it is never read by a different presenter
+   *
+   * @return the snapshot, or null if the presenter doesn't keep state or couldn't write it
+   */
+  private byte[] saveState(Presenter presenter) {
+    if (!(presenter instanceof RetainedState)) {
+      return null;
+    }
+    PresenterTimingSink sink = timingSink;
+    long start = sink == PresenterTimingSink.NONE ? 0 : System.nanoTime();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeUTF(presenter.getClass().getName());
+      ((RetainedState) presenter).writeState(out);
+      out.flush();
+    } catch (IOException e) {
+      return null;
+    } finally {
+      if (sink != PresenterTimingSink.NONE) {
+        sink.record(presenter.getClass(), PresenterCallback.SAVE_STATE, System.nanoTime() - start);
+      }
+    }
+    byte[] snapshot = bytes.toByteArray();
+    snapshotSink.record(presenter.getClass(), snapshot.length);
+    return snapshot;
+  }
+
+  private void restoreState(Presenter presenter, InputStream snapshot) {
+    if (!(presenter instanceof RetainedState)) {
+      return;
+    }
+    PresenterTimingSink sink = timingSink;
+    long start = sink == PresenterTimingSink.NONE ? 0 : System.nanoTime();
+    try {
+      DataInputStream in = new DataInputStream(snapshot);
+      if (presenter.getClass().getName().equals(in.readUTF())) {
+        ((RetainedState) presenter).readState(in);
+      }
+    } catch (IOException e) {
+      //unreadable, the presenter starts from scratch as it would have without one
+    } finally {
+      if (sink != PresenterTimingSink.NONE) {
+        sink.record(presenter.getClass(), PresenterCallback.RESTORE_STATE, System.nanoTime() - start);
+      }
+    }
+  }
+
+  /**
+   * @return the saved presenter id, or {@link #NO_PRESENTER_ID} if there isn't one or it was saved by a previous process
+   */
+  private long getPresenterIdFromBundle(Bundle bundle) {
+    if (bundle != null && bundle.containsKey(PRESENTER_ID_KEY) && bundle.getLong(PRESENTER_EPOCH_KEY) == epoch) {
+      return bundle.getLong(PRESENTER_ID_KEY);
+    }
+    return NO_PRESENTER_ID;
+  }
+
+  private long nextPresenterId() {
+    return lastPresenterId.incrementAndGet();
+  }
+
+  private final class DestroyBatch implements Runnable {
+    private final List<Presenter> presenters;
+
+    DestroyBatch(List<Presenter> presenters) {
+      this.presenters = presenters;
+    }
+
+    @Override
+    public void run() {
+      RuntimeException failure = null;
+      try {
+        for (Presenter presenter : presenters) {
+          //one presenter failing shouldn't stop the rest being cleaned up
+          try {
+            call(presenter, PresenterCallback.DESTROY, null);
+          } catch (RuntimeException e) {
+            if (failure == null) {
+              failure = e;
+            }
+          }
+        }
+      } finally {
+        synchronized (destroyLock) {
+          if (--pendingDestroys == 0) {
+            destroyLock.notifyAll();
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
       }
-      //maybe the app has been killed and so we don't have our presenters anymore!
     }
-    return false;
   }
 
   static final class PresenterNode {
-    private boolean isParent;
-    private Presenter node;
-    private String id;
-    private String parentId;
+    private final boolean isParent;
+    //null until a lazily bound presenter is created, written while holding the node
+    private volatile Presenter node;
+    //the view currently bound, a lazily bound presenter is created for it
+    private MVPView boundView;
+    //snapshot for a lazily bound presenter to restore once it is created
+    private byte[] pendingState;
+    //where the latest snapshot spilled to the state store lives, and whether it has yet to be restored
+    private long storedStateKey;
+    private boolean storedStatePending;
+    //handed to every view bound to this node
+    private PresenterLifecycleListener listener;
+    private final long id;
+    private final long parentId;
+    //copy on write so children can be walked without holding the registry
+    private volatile List<PresenterNode> children;
+    //guarded by the node
+    private boolean destroyed;
+    private int lifecycleMask;
+    private boolean lifecycleMaskKnown;
+
+    //guarded by the RetainedPresenterCache
+    boolean retained;
+    boolean evicted;
+    long retainedAtMillis;
+    long retainedBytes;
+    PresenterNode retainedPrev;
+    PresenterNode retainedNext;
 
-    public PresenterNode(Presenter node) {
+    public PresenterNode(long id, Presenter node) {
+      this.id = id;
       this.node = node;
       this.isParent = true;
-      id = UUID.randomUUID().toString();
+      this.parentId = NO_PRESENTER_ID;
     }
 
-    public PresenterNode(Presenter node, String parentId) {
+    public PresenterNode(long id, Presenter node, long parentId) {
+      this.id = id;
       this.node = node;
       this.isParent = false;
       this.parentId = parentId;
-      id = UUID.randomUUID().toString();
     }
 
-    public String getId() {
+    public long getId() {
       return id;
     }
 
     public Presenter getPresenter() {
       return node;
     }
+
+    long getParentId() {
+      return parentId;
+    }
+
+    /**
+     * Maintained by {@link PresenterRegistry}, children are linked when they are put and unlinked when they are removed
+     */
+    List<PresenterNode> getChildren() {
+      return children == null ? Collections.<PresenterNode>emptyList() : children;
+    }
+
+    void addChild(PresenterNode child) {
+      if (children == null) {
+        children = new CopyOnWriteArrayList<>();
+      }
+      children.add(child);
+    }
+
+    void removeChild(PresenterNode child) {
+      if (children != null) {
+        children.remove(child);
+      }
+    }
   }
 }
@@ -6,20 +6,22 @@ import android.support.annotation.Nullable;
 import mvp.MVPView;
 
 public interface PresenterServiceInternal {
-  void savePresenter(String id, Bundle bundle);
+  void savePresenter(long id, Bundle bundle);
 
-  void dropView(String id, boolean retain);
+  void dropView(long id, boolean retain);
 
   void takeView(MVPView view, Bundle bundle);
 
   void takeChild(MVPView view);
 
+  void takeChild(MVPView view, MVPView parentView);
+
   @Nullable
   Presenter getCurrentParent();
 
-  void onPresenterViewPaused(String id);
+  void onPresenterViewPaused(long id);
 
-  void onPresenterViewResumed(String id);
+  void onPresenterViewResumed(long id);
 
-  void onPresenterViewReady(String id);
+  void onPresenterViewReady(long id);
 }
@@ -0,0 +1,256 @@
+package mvp.presenter;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mvp.MVPView;
+
+/**
+ * Estimates how much heap a presenter keeps alive by walking its object graph through reflection.  Views, other presenters,
+ * classes, threads and whatever is only weakly held are not counted, they either belong to someone else or are there anyway.
+ *
+ * The walk is bounded so it can run on a live app.  Large arrays, and so the collections backed by them, only have a sample
+ * of their elements walked and what the sample holds is scaled up to the array's length.  The walk stops altogether after
+ * the object limit, at which point the estimate is a lower bound.
+ *
+ * Newer VMs refuse reflection into platform classes, java.util's collections included.  Collections and maps whose fields
+ * can't be read are walked through their public API instead, sampling evenly spaced elements and allowing a reference per
+ * element, and an entry object each for maps, for the internals that can't be seen.  Fields refused elsewhere are left
+ * out and counted, see {@link #getInaccessibleFields()}.
+ *
+ * Sizes assume a 64 bit VM with compressed references, ART lays objects out similarly.  Presenters implementing
+ * {@link SizedPresenter} are asked instead of walked.
+ */
+public final class PresenterSizeEstimator {
+  public static final int DEFAULT_MAX_OBJECTS = 4096;
+  public static final int DEFAULT_SAMPLE_SIZE = 32;
+
+  private static final int OBJECT_HEADER_BYTES = 12;
+  private static final int ARRAY_HEADER_BYTES = 16;
+  private static final int REFERENCE_BYTES = 4;
+  //a HashMap node, hash, key, value and next
+  private static final int MAP_ENTRY_BYTES = 32;
+
+  private final int maxObjects;
+  private final int sampleSize;
+  //guarded by itself
+  private final Map<Class<?>, Layout> layouts = new HashMap<>();
+  private final AtomicInteger inaccessibleFields = new AtomicInteger();
+
+  public PresenterSizeEstimator() {
+    this(DEFAULT_MAX_OBJECTS, DEFAULT_SAMPLE_SIZE);
+  }
+
+  /**
+   * @param maxObjects - most objects walked per presenter
+   * @param sampleSize - most elements walked per array
+   */
+  public PresenterSizeEstimator(int maxObjects, int sampleSize) {
+    if (maxObjects < 1 || sampleSize < 1) {
+      throw new IllegalArgumentException("limits must be positive");
+    }
+    this.maxObjects = maxObjects;
+    this.sampleSize = sampleSize;
+  }
+
+  /**
+   * @return reference fields, counted once per class, the walk couldn't read and so didn't follow.  Above zero the estimates
+   * are lower bounds for presenters holding those classes.
+   */
+  public int getInaccessibleFields() {
+    return inaccessibleFields.get();
+  }
+
+  /**
+   * @return estimated bytes the presenter keeps alive, not counting its view
+   */
+  public long estimate(Presenter presenter) {
+    if (presenter instanceof SizedPresenter) {
+      return ((SizedPresenter) presenter).getRetainedBytes();
+    }
+    Map<Object, Boolean> visited = new IdentityHashMap<>();
+    ArrayDeque<Object> objects = new ArrayDeque<>();
+    //how many times over each queued object counts, greater than one for those reached through a sample
+    ArrayDeque<Double> weights = new ArrayDeque<>();
+    visited.put(presenter, Boolean.TRUE);
+    objects.add(presenter);
+    weights.add(1d);
+    double bytes = 0;
+    int walked = 0;
+    while (!objects.isEmpty() && walked++ < maxObjects) {
+      Object object = objects.poll();
+      double weight = weights.poll();
+      Class<?> type = object.getClass();
+      if (type.isArray()) {
+        bytes += weight * walkArray(object, weight, visited, objects, weights);
+      } else {
+        Layout layout = layout(type);
+        bytes += weight * layout.shallowBytes;
+        if (object instanceof Reference) {
+          continue;
+        }
+        if (!layout.complete && (object instanceof Collection || object instanceof Map)) {
+          bytes += weight * walkContents(object, weight, visited, objects, weights);
+          continue;
+        }
+        for (int i = 0; i < layout.references.size(); i++) {
+          Object referent;
+          try {
+            referent = layout.references.get(i).get(object);
+          } catch (IllegalAccessException e) {
+            continue;
+          }
+          enqueue(referent, weight, visited, objects, weights);
+        }
+      }
+    }
+    return (long) bytes;
+  }
+
+  private long walkArray(Object array, double weight, Map<Object, Boolean> visited, ArrayDeque<Object> objects,
+      ArrayDeque<Double> weights) {
+    int length = Array.getLength(array);
+    Class<?> componentType = array.getClass().getComponentType();
+    if (componentType.isPrimitive()) {
+      return align(ARRAY_HEADER_BYTES + (long) length * primitiveBytes(componentType));
+    }
+    Object[] elements = (Object[]) array;
+    //evenly spaced so the used part of a half empty backing array is still sampled, empty slots scale up to nothing
+    int step = length <= sampleSize ? 1 : (length + sampleSize - 1) / sampleSize;
+    double scale = (double) length / ((length + step - 1) / step);
+    for (int i = 0; i < length; i += step) {
+      enqueue(elements[i], weight * scale, visited, objects, weights);
+    }
+    return align(ARRAY_HEADER_BYTES + (long) length * REFERENCE_BYTES);
+  }
+
+  /**
+   * For collections whose fields the VM won't let us read, their storage is estimated from their size and the first
+   * elements are sampled
+   */
+  private long walkContents(Object container, double weight, Map<Object, Boolean> visited, ArrayDeque<Object> objects,
+      ArrayDeque<Double> weights) {
+    boolean isMap = container instanceof Map;
+    Collection<?> elements = isMap ? ((Map<?, ?>) container).entrySet() : (Collection<?>) container;
+    int size = elements.size();
+    if (size == 0) {
+      return 0;
+    }
+    //evenly spaced like arrays, lists that can are indexed rather than iterated
+    int step = size <= sampleSize ? 1 : (size + sampleSize - 1) / sampleSize;
+    double scale = (double) size / ((size + step - 1) / step);
+    try {
+      if (elements instanceof List && elements instanceof RandomAccess) {
+        List<?> list = (List<?>) elements;
+        for (int i = 0; i < size; i += step) {
+          enqueue(list.get(i), weight * scale, visited, objects, weights);
+        }
+      } else {
+        int i = 0;
+        for (Object element : elements) {
+          if (i++ % step != 0) {
+            continue;
+          }
+          if (isMap) {
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) element;
+            enqueue(entry.getKey(), weight * scale, visited, objects, weights);
+            enqueue(entry.getValue(), weight * scale, visited, objects, weights);
+          } else {
+            enqueue(element, weight * scale, visited, objects, weights);
+          }
+        }
+      }
+    } catch (RuntimeException e) {
+      //changed while being walked, go with what was sampled
+    }
+    return align(ARRAY_HEADER_BYTES + (long) size * (isMap ? REFERENCE_BYTES + MAP_ENTRY_BYTES : REFERENCE_BYTES));
+  }
+
+  private void enqueue(Object object, double weight, Map<Object, Boolean> visited, ArrayDeque<Object> objects,
+      ArrayDeque<Double> weights) {
+    if (object == null || !counted(object) || visited.put(object, Boolean.TRUE) != null) {
+      return;
+    }
+    objects.add(object);
+    weights.add(weight);
+  }
+
+  private static boolean counted(Object object) {
+    return !(object instanceof MVPView || object instanceof Presenter || object instanceof Class || object instanceof ClassLoader
+        || object instanceof Thread);
+  }
+
+  private Layout layout(Class<?> type) {
+    synchronized (layouts) {
+      Layout layout = layouts.get(type);
+      if (layout == null) {
+        layout = new Layout(type);
+        layouts.put(type, layout);
+        inaccessibleFields.addAndGet(layout.inaccessible);
+      }
+      return layout;
+    }
+  }
+
+  private static int primitiveBytes(Class<?> type) {
+    if (type == long.class || type == double.class) {
+      return 8;
+    } else if (type == int.class || type == float.class) {
+      return 4;
+    } else if (type == short.class || type == char.class) {
+      return 2;
+    }
+    return 1;
+  }
+
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+  private static final class Layout {
+    final long shallowBytes;
+    //instance fields holding objects, those that couldn't be made accessible are left out
+    final List<Field> references = new ArrayList<>();
+    final int inaccessible;
+    final boolean complete;
+
+    Layout(Class<?> type) {
+      long bytes = OBJECT_HEADER_BYTES;
+      int refused = 0;
+      for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          Class<?> fieldType = field.getType();
+          if (fieldType.isPrimitive()) {
+            bytes += primitiveBytes(fieldType);
+            continue;
+          }
+          bytes += REFERENCE_BYTES;
+          try {
+            field.setAccessible(true);
+            references.add(field);
+          } catch (RuntimeException e) {
+            //a platform class that won't let us in, its size is still counted
+            refused++;
+          }
+        }
+      }
+      shallowBytes = align(bytes);
+      inaccessible = refused;
+      complete = refused == 0;
+    }
+  }
+}
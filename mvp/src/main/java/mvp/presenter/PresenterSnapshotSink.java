@@ -0,0 +1,17 @@
+package mvp.presenter;
+
+/**
+ * Receives the size of each {@link RetainedState} snapshot, set one on
+ * {@link PresenterServiceImpl#setSnapshotSink(PresenterSnapshotSink)} to find out which presenters bloat the saved instance
+ * state.  Encode and decode times go to the {@link PresenterTimingSink} as {@link PresenterCallback#SAVE_STATE} and
+ * {@link PresenterCallback#RESTORE_STATE}.
+ */
+public interface PresenterSnapshotSink {
+  PresenterSnapshotSink NONE = new PresenterSnapshotSink() {
+    @Override
+    public void record(Class<? extends Presenter> presenterClass, int bytes) {
+    }
+  };
+
+  void record(Class<? extends Presenter> presenterClass, int bytes);
+}
@@ -0,0 +1,97 @@
+package mvp.presenter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link PresenterSnapshotSink} keeping the count, total and largest snapshot per presenter class.
+ */
+public final class PresenterSnapshotSizes implements PresenterSnapshotSink {
+  private final ConcurrentMap<Class<? extends Presenter>, Recorder> recorders = new ConcurrentHashMap<>();
+
+  @Override
+  public void record(Class<? extends Presenter> presenterClass, int bytes) {
+    Recorder recorder = recorders.get(presenterClass);
+    if (recorder == null) {
+      Recorder created = new Recorder();
+      recorder = recorders.putIfAbsent(presenterClass, created);
+      if (recorder == null) {
+        recorder = created;
+      }
+    }
+    recorder.record(bytes);
+  }
+
+  public Set<Class<? extends Presenter>> getPresenterClasses() {
+    return Collections.unmodifiableSet(new HashSet<>(recorders.keySet()));
+  }
+
+  /**
+   * @return a snapshot of the sizes, empty if nothing has been recorded
+   */
+  public Sizes getSizes(Class<? extends Presenter> presenterClass) {
+    Recorder recorder = recorders.get(presenterClass);
+    if (recorder == null) {
+      return new Sizes(0, 0, 0);
+    }
+    return new Sizes(recorder.count.get(), recorder.totalBytes.get(), recorder.maxBytes.get());
+  }
+
+  public void reset() {
+    recorders.clear();
+  }
+
+  private static final class Recorder {
+    final AtomicLong count = new AtomicLong();
+    final AtomicLong totalBytes = new AtomicLong();
+    final AtomicLong maxBytes = new AtomicLong();
+
+    void record(int bytes) {
+      count.incrementAndGet();
+      totalBytes.addAndGet(bytes);
+      long max;
+      while (bytes > (max = maxBytes.get())) {
+        if (maxBytes.compareAndSet(max, bytes)) {
+          break;
+        }
+      }
+    }
+  }
+
+  public static final class Sizes {
+    private final long count;
+    private final long totalBytes;
+    private final long maxBytes;
+
+    Sizes(long count, long totalBytes, long maxBytes) {
+      this.count = count;
+      this.totalBytes = totalBytes;
+      this.maxBytes = maxBytes;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getTotalBytes() {
+      return totalBytes;
+    }
+
+    public long getMaxBytes() {
+      return maxBytes;
+    }
+
+    public long getMeanBytes() {
+      return count == 0 ? 0 : totalBytes / count;
+    }
+
+    @Override
+    public String toString() {
+      return "Sizes{count=" + count + ", meanBytes=" + getMeanBytes() + ", maxBytes=" + maxBytes + "}";
+    }
+  }
+}
@@ -0,0 +1,328 @@
+package mvp.presenter;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * On disk store for {@link RetainedState} snapshots too big to go in a Bundle, which has to fit in a binder transaction
+ * along with everything else the activity saves.  Only the snapshot's key goes in the Bundle.
+ *
+ * The file is an append only log of records, a newer record for a key supersedes the older ones and a removal is a record
+ * with no data.  Once more of the file is superseded than live it is compacted into a new file.  Reads go through a memory
+ * mapping of the file so restoring a snapshot copies nothing up front, the presenter only pages in what it reads.
+ *
+ * Records are not synced to disk, the store is there to survive the process being killed not the device losing power.  A
+ * record torn by the process dying mid write is dropped when the file is next opened.
+ *
+ * Snapshots are removed when their presenter is finished with, but one saved by a task the user swiped away is never asked
+ * for again.  Call {@link #clear()} when the app starts without any saved state to drop them.
+ */
+public final class PresenterStateStore {
+  public static final long NO_KEY = 0;
+
+  private static final int MAGIC = 0x4d565053;
+  //magic then the last key handed out, so keys are never reused even after clear
+  private static final int HEADER_BYTES = 4 + 8;
+  //key then length, a length of -1 removes the key
+  private static final int RECORD_HEADER_BYTES = 8 + 4;
+  private static final int REMOVED = -1;
+  private static final long MIN_COMPACT_BYTES = 64 * 1024;
+
+  private final File file;
+  private RandomAccessFile randomAccessFile;
+  private FileChannel channel;
+  private long length;
+  //covers the file up to its length when it was last read, remapped when a read needs more
+  private MappedByteBuffer mapping;
+
+  //key to the offset of its data, the length is read from the record header
+  private final Map<Long, Long> offsets = new HashMap<>();
+  private long liveBytes;
+  private long lastKey;
+
+  /**
+   * Opens the store, creating the file if needed and indexing what's already in it
+   */
+  public PresenterStateStore(File file) throws IOException {
+    this.file = file;
+    open();
+  }
+
+  /**
+   * @param key - the key the presenter's last snapshot was stored under, or {@link #NO_KEY} for a new one
+   * @return the key the snapshot is now stored under
+   */
+  public synchronized long put(long key, byte[] snapshot) throws IOException {
+    if (key == NO_KEY) {
+      key = ++lastKey;
+      writeHeader(channel);
+    }
+    long offset = append(key, snapshot, snapshot.length);
+    Long previous = offsets.put(key, offset);
+    if (previous != null) {
+      liveBytes -= recordBytes(readLength(previous));
+    }
+    liveBytes += recordBytes(snapshot.length);
+    compactIfWasteful();
+    return key;
+  }
+
+  /**
+   * @return a stream over the snapshot read through the mapping, or null if there isn't one for the key
+   */
+  public synchronized InputStream open(long key) throws IOException {
+    Long offset = offsets.get(key);
+    if (offset == null) {
+      return null;
+    }
+    int size = readLength(offset);
+    ByteBuffer data = mapped(offset + size).duplicate();
+    data.position((int) (long) offset);
+    data.limit((int) (offset + size));
+    return new ByteBufferInputStream(data.slice());
+  }
+
+  public synchronized void remove(long key) throws IOException {
+    Long offset = offsets.remove(key);
+    if (offset == null) {
+      return;
+    }
+    liveBytes -= recordBytes(readLength(offset));
+    append(key, null, REMOVED);
+    compactIfWasteful();
+  }
+
+  public synchronized void clear() throws IOException {
+    offsets.clear();
+    liveBytes = 0;
+    channel.truncate(HEADER_BYTES);
+    length = HEADER_BYTES;
+    mapping = null;
+  }
+
+  public synchronized boolean contains(long key) {
+    return offsets.containsKey(key);
+  }
+
+  public synchronized int size() {
+    return offsets.size();
+  }
+
+  /**
+   * @return bytes the file takes, superseded records included
+   */
+  public synchronized long getFileBytes() {
+    return length;
+  }
+
+  /**
+   * Rewrites the file with only the live records, done automatically once most of it is superseded.  If the compacted copy
+   * can't replace the file the store carries on with the old one.
+   */
+  public synchronized void compact() throws IOException {
+    File compacted = new File(file.getPath() + ".compact");
+    boolean written = false;
+    RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+    try {
+      out.setLength(0);
+      FileChannel outChannel = out.getChannel();
+      writeHeader(outChannel);
+      outChannel.position(HEADER_BYTES);
+      //the offsets are left alone, they are read again from the copy once it has replaced the file
+      for (long offset : offsets.values()) {
+        long recordBytes = recordBytes(readLength(offset));
+        long from = offset - RECORD_HEADER_BYTES;
+        long transferred = 0;
+        while (transferred < recordBytes) {
+          transferred += channel.transferTo(from + transferred, recordBytes - transferred, outChannel);
+        }
+      }
+      written = true;
+    } finally {
+      out.close();
+      if (!written) {
+        compacted.delete();
+      }
+    }
+    //replaced while still open so a failed rename leaves the store as it was
+    boolean replaced = compacted.renameTo(file);
+    close();
+    if (!replaced) {
+      //some platforms won't replace an open file
+      replaced = compacted.renameTo(file);
+    }
+    //the compacted copy, or the old file again
+    open();
+    if (!replaced) {
+      compacted.delete();
+      throw new IOException("couldn't replace " + file + " with its compacted copy");
+    }
+  }
+
+  public synchronized void close() throws IOException {
+    mapping = null;
+    randomAccessFile.close();
+  }
+
+  private void open() throws IOException {
+    randomAccessFile = new RandomAccessFile(file, "rw");
+    channel = randomAccessFile.getChannel();
+    length = channel.size();
+    mapping = null;
+    offsets.clear();
+    liveBytes = 0;
+    if (length < HEADER_BYTES || readInt(0) != MAGIC) {
+      //new, or not something we can read
+      clear();
+      writeHeader(channel);
+      return;
+    }
+    ByteBuffer header = ByteBuffer.allocate(8);
+    readFully(header, 4);
+    header.flip();
+    lastKey = header.getLong();
+
+    ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+    long position = HEADER_BYTES;
+    while (position + RECORD_HEADER_BYTES <= length) {
+      recordHeader.clear();
+      readFully(recordHeader, position);
+      recordHeader.flip();
+      long key = recordHeader.getLong();
+      int size = recordHeader.getInt();
+      long end = position + RECORD_HEADER_BYTES + Math.max(size, 0);
+      if (size < REMOVED || end > length) {
+        break;
+      }
+      Long previous;
+      if (size == REMOVED) {
+        previous = offsets.remove(key);
+      } else {
+        previous = offsets.put(key, position + RECORD_HEADER_BYTES);
+        liveBytes += recordBytes(size);
+      }
+      if (previous != null) {
+        liveBytes -= recordBytes(readLength(previous));
+      }
+      lastKey = Math.max(lastKey, key);
+      position = end;
+    }
+    if (position != length) {
+      //torn by the process dying mid write
+      channel.truncate(position);
+      length = position;
+    }
+  }
+
+  private void writeHeader(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    header.putInt(MAGIC).putLong(lastKey).flip();
+    writeFully(channel, header, 0);
+  }
+
+  private long append(long key, byte[] data, int size) throws IOException {
+    ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+    recordHeader.putLong(key).putInt(size).flip();
+    long position = length;
+    writeFully(channel, recordHeader, position);
+    if (data != null) {
+      writeFully(channel, ByteBuffer.wrap(data), position + RECORD_HEADER_BYTES);
+    }
+    length = position + RECORD_HEADER_BYTES + Math.max(size, 0);
+    return position + RECORD_HEADER_BYTES;
+  }
+
+  private void compactIfWasteful() {
+    long wasted = length - HEADER_BYTES - liveBytes;
+    if (length >= MIN_COMPACT_BYTES && wasted > liveBytes) {
+      try {
+        compact();
+      } catch (IOException e) {
+        //the write that got us here still happened, try again on the next one
+      }
+    }
+  }
+
+  private MappedByteBuffer mapped(long end) throws IOException {
+    if (mapping == null || mapping.capacity() < end) {
+      //the whole file, so reads after a few more appends don't need a new mapping
+      mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+    return mapping;
+  }
+
+  private int readLength(long offset) throws IOException {
+    return readInt(offset - 4);
+  }
+
+  private int readInt(long position) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(4);
+    readFully(buffer, position);
+    buffer.flip();
+    return buffer.getInt();
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + buffer.position());
+    }
+  }
+
+  private static long recordBytes(int size) {
+    return RECORD_HEADER_BYTES + size;
+  }
+
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int read = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, read);
+      return read;
+    }
+
+    @Override
+    public long skip(long count) {
+      int skipped = (int) Math.min(count, buffer.remaining());
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -0,0 +1,312 @@
+package mvp.presenter;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import rx.Observable;
+import rx.Observer;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.exceptions.Exceptions;
+import rx.functions.Action0;
+import rx.subscriptions.CompositeSubscription;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Subscriptions that live as long as the presenter rather than its view.  Binding a stream with the view's lifecycle binder
+ * restarts it on every rotation, even though the presenter is retained.  Subscribed here the upstream keeps running while
+ * the view is away and only delivery to the observer stops, then everything is unsubscribed in one go when the presenter is
+ * destroyed.
+ *
+ * While detached, items are dropped and a completion or error is held until the next view is attached so the presenter
+ * always learns how the stream ended.  A stream subscribed with a key also keeps its last few items, and they are replayed
+ * every time a view is attached so a new view after a rotation starts with what arrived before and during it, even if
+ * the stream has since completed.  Replayed items across all streams are bounded by the replay budget, the least recently
+ * updated stream loses its oldest items first.
+ *
+ * Observers are called on whichever thread the stream emits on, so observe on the main thread before subscribing if they
+ * touch the view.  Delivery is serialised on this object.
+ */
+public final class PresenterSubscriptions {
+  public static final int DEFAULT_REPLAY_BUDGET = 256;
+  //kept in place of null items, which Rx allows and ArrayDeque doesn't
+  private static final Object NULL_ITEM = new Object();
+
+  private final CompositeSubscription subscriptions = new CompositeSubscription();
+  //everything below is guarded by this
+  private final List<Delivery<?>> deliveries = new ArrayList<>();
+  //least recently updated first, kept after the stream ends so it can still be replayed
+  private final Map<Object, Delivery<?>> replaying = new LinkedHashMap<>();
+  private boolean attached;
+  private int replayBudget = DEFAULT_REPLAY_BUDGET;
+  private int replayItems;
+
+  /**
+   * @return the subscription, unsubscribing it ends the stream early
+   */
+  public <T> Subscription subscribe(Observable<T> observable, Observer<? super T> observer) {
+    return subscribe(null, 0, observable, observer);
+  }
+
+  /**
+   * @param key - identifies the stream, subscribing again with the same key replaces the earlier stream and carries on from
+   * its items
+   * @param replayCount - how many of the latest items to replay to each new view
+   */
+  public <T> Subscription subscribe(@Nullable Object key, int replayCount, Observable<T> observable, Observer<? super T> observer) {
+    if (replayCount < 0) {
+      throw new IllegalArgumentException("replay count must not be negative");
+    }
+    final Delivery<T> delivery;
+    Delivery<?> replaced = null;
+    synchronized (this) {
+      delivery = new Delivery<>(key, replayCount, observer);
+      deliveries.add(delivery);
+      if (key != null && replayCount > 0) {
+        replaced = replaying.remove(key);
+        if (replaced != null) {
+          delivery.takeItems(replaced);
+        }
+        replaying.put(key, delivery);
+      }
+    }
+    if (replaced != null) {
+      replaced.unsubscribe();
+    }
+    subscriptions.add(delivery);
+    //finished streams are let go of so a long lived presenter doesn't collect them
+    delivery.add(Subscriptions.create(new Action0() {
+      @Override
+      public void call() {
+        remove(delivery);
+      }
+    }));
+    //not wrapped in a SafeSubscriber, it would unsubscribe on a completion that is being held for the next view
+    observable.unsafeSubscribe(delivery);
+    return delivery;
+  }
+
+  /**
+   * Replays what the keyed streams kept, then delivers from now on including any completion or error that arrived while
+   * detached
+   */
+  public synchronized void attach() {
+    attached = true;
+    Set<Delivery<?>> toAttach = new LinkedHashSet<>(replaying.values());
+    toAttach.addAll(deliveries);
+    for (Delivery<?> delivery : toAttach) {
+      delivery.attach();
+    }
+  }
+
+  public synchronized void detach() {
+    attached = false;
+  }
+
+  /**
+   * @param maxItems - most items kept for replay across all streams
+   */
+  public synchronized void setReplayBudget(int maxItems) {
+    if (maxItems < 0) {
+      throw new IllegalArgumentException("budget must not be negative");
+    }
+    replayBudget = maxItems;
+    trimReplayItems();
+  }
+
+  /**
+   * @return items currently kept for replay
+   */
+  public synchronized int getReplayItems() {
+    return replayItems;
+  }
+
+  /**
+   * Unsubscribes everything and drops what was kept for replay, anything subscribed afterwards is unsubscribed straight away
+   */
+  public void unsubscribe() {
+    subscriptions.unsubscribe();
+    synchronized (this) {
+      replaying.clear();
+      replayItems = 0;
+    }
+  }
+
+  public boolean isUnsubscribed() {
+    return subscriptions.isUnsubscribed();
+  }
+
+  /**
+   * @return streams still running
+   */
+  public synchronized int size() {
+    return deliveries.size();
+  }
+
+  private void remove(Delivery<?> delivery) {
+    synchronized (this) {
+      deliveries.remove(delivery);
+    }
+    subscriptions.remove(delivery);
+  }
+
+  //callers hold this
+  private void trimReplayItems() {
+    Iterator<Delivery<?>> iterator = replaying.values().iterator();
+    while (replayItems > replayBudget && iterator.hasNext()) {
+      Delivery<?> delivery = iterator.next();
+      while (replayItems > replayBudget && delivery.dropOldest()) {
+        replayItems--;
+      }
+      if (delivery.isFinished() && !delivery.hasItems()) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private final class Delivery<T> extends Subscriber<T> {
+    private final Object key;
+    private final int replayCount;
+    private final Observer<? super T> observer;
+    //guarded by PresenterSubscriptions.this
+    //items, or NULL_ITEM for null
+    private ArrayDeque<Object> items;
+    private boolean completed;
+    private Throwable error;
+    private boolean finished;
+    //superseded by a newer stream with the same key, which took its items
+    private boolean replaced;
+
+    Delivery(Object key, int replayCount, Observer<? super T> observer) {
+      this.key = key;
+      this.replayCount = key == null ? 0 : replayCount;
+      this.observer = observer;
+    }
+
+    @Override
+    public void onNext(T item) {
+      synchronized (PresenterSubscriptions.this) {
+        keep(item);
+        if (!attached) {
+          return;
+        }
+        try {
+          observer.onNext(item);
+        } catch (Throwable e) {
+          Exceptions.throwOrReport(e, this, item);
+        }
+      }
+    }
+
+    @Override
+    public void onCompleted() {
+      synchronized (PresenterSubscriptions.this) {
+        completed = true;
+        if (attached) {
+          finish();
+        }
+      }
+    }
+
+    @Override
+    public void onError(Throwable e) {
+      synchronized (PresenterSubscriptions.this) {
+        error = e;
+        if (attached) {
+          finish();
+        }
+      }
+    }
+
+    //callers hold PresenterSubscriptions.this from here on
+    void attach() {
+      if (items != null) {
+        for (Object item : items) {
+          observer.onNext(unwrap(item));
+        }
+      }
+      if ((completed || error != null) && !finished) {
+        finish();
+      }
+    }
+
+    boolean isFinished() {
+      return finished;
+    }
+
+    boolean hasItems() {
+      return items != null && !items.isEmpty();
+    }
+
+    boolean dropOldest() {
+      if (!hasItems()) {
+        return false;
+      }
+      items.removeFirst();
+      return true;
+    }
+
+    void takeItems(Delivery<?> replaced) {
+      replaced.replaced = true;
+      ArrayDeque<Object> carried = replaced.items;
+      if (carried == null) {
+        return;
+      }
+      //uncounted before they are kept again, or the budget sees them twice and trims the ones being carried over
+      replaced.items = null;
+      replayItems -= carried.size();
+      for (Object item : carried) {
+        keepWrapped(item);
+      }
+    }
+
+    private void keep(T item) {
+      keepWrapped(item == null ? NULL_ITEM : item);
+    }
+
+    private void keepWrapped(Object item) {
+      if (replayCount == 0 || replaced || subscriptions.isUnsubscribed()) {
+        return;
+      }
+      if (items == null) {
+        items = new ArrayDeque<>(Math.min(replayCount, 16));
+      }
+      if (items.size() == replayCount) {
+        items.removeFirst();
+      } else {
+        replayItems++;
+      }
+      items.addLast(item);
+      //most recently updated last
+      replaying.remove(key);
+      replaying.put(key, this);
+      trimReplayItems();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T unwrap(Object item) {
+      return item == NULL_ITEM ? null : (T) item;
+    }
+
+    private void finish() {
+      finished = true;
+      try {
+        if (error == null) {
+          observer.onCompleted();
+        } else {
+          observer.onError(error);
+        }
+      } finally {
+        unsubscribe();
+      }
+    }
+  }
+}
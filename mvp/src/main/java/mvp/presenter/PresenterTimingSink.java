@@ -0,0 +1,19 @@
+package mvp.presenter;
+
+/**
+ * Receives how long each presenter call took, set one on {@link PresenterServiceImpl#setTimingSink(PresenterTimingSink)} to find
+ * out which presenters make lifecycle changes slow.  Called on whichever thread made the call so implementations must be
+ * thread safe and quick.
+ */
+public interface PresenterTimingSink {
+  /**
+   * The default, the service doesn't read the clock at all when this is set
+   */
+  PresenterTimingSink NONE = new PresenterTimingSink() {
+    @Override
+    public void record(Class<? extends Presenter> presenterClass, PresenterCallback callback, long durationNanos) {
+    }
+  };
+
+  void record(Class<? extends Presenter> presenterClass, PresenterCallback callback, long durationNanos);
+}
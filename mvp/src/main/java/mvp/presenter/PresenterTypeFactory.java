@@ -0,0 +1,11 @@
+package mvp.presenter;
+
+import mvp.MVPView;
+
+/**
+ * A factory that can create a presenter knowing only the type of view it will be given, needed to prewarm presenters before
+ * their view exists.  The generated factory implements it.
+ */
+public interface PresenterTypeFactory extends PresenterFactory {
+  Presenter createPresenterForType(Class<? extends MVPView> viewType);
+}
@@ -0,0 +1,13 @@
+package mvp.presenter;
+
+/**
+ * Implemented by presenters that have work to start when they are prewarmed, see
+ * {@link PresenterServiceImpl#prewarm(Class)}.
+ */
+public interface Prewarmable {
+  /**
+   * Called on the prewarm executor straight after the presenter is created, start loading the data the view will need.  The
+   * presenter takes its view later on whichever thread binds it, so anything loaded must be published safely.
+   */
+  void onPrewarm();
+}
@@ -0,0 +1,148 @@
+package mvp.presenter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+import mvp.MVPView;
+
+/**
+ * Presenters created ahead of their view, at most one per view type.  A type is reserved while its presenter is being
+ * built and holds the presenter once it is ready, until a view of that type claims it or it has waited longer than the
+ * timeout.  Like {@link RetainedPresenterCache} this only decides which presenters go, {@link PresenterServiceImpl} destroys them,
+ * checking for expired presenters on the expiry scheduler once each has waited the timeout.
+ */
+final class PrewarmedPresenters {
+  //presenters are built on this
+  final Executor executor;
+  //runs the expiry check for each presenter once it has waited the timeout
+  final ScheduledExecutorService expiryScheduler;
+  final long timeoutMillis;
+  private final Clock clock;
+  private final Map<Class<? extends MVPView>, Entry> entries = new HashMap<>();
+
+  PrewarmedPresenters(Executor executor, long timeoutMillis, Clock clock, ScheduledExecutorService expiryScheduler) {
+    if (timeoutMillis < 0) {
+      throw new IllegalArgumentException("timeout must not be negative");
+    }
+    this.executor = executor;
+    this.expiryScheduler = expiryScheduler;
+    this.timeoutMillis = timeoutMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * @return false if the type already has a presenter prewarmed or on the way
+   */
+  synchronized boolean reserve(Class<? extends MVPView> viewType) {
+    if (entries.containsKey(viewType)) {
+      return false;
+    }
+    entries.put(viewType, new Entry());
+    return true;
+  }
+
+  /**
+   * Called once the reserved presenter is built
+   *
+   * @return false if the reservation has gone, claimed before the presenter was ready or cleared, and the presenter must be
+   * destroyed
+   */
+  synchronized boolean offer(Class<? extends MVPView> viewType, Presenter presenter) {
+    Entry entry = entries.get(viewType);
+    if (entry == null || entry.presenter != null) {
+      return false;
+    }
+    entry.presenter = presenter;
+    entry.readyAtMillis = clock.uptimeMillis();
+    return true;
+  }
+
+  /**
+   * Gives up a reservation whose presenter couldn't be built
+   */
+  synchronized void cancel(Class<? extends MVPView> viewType) {
+    Entry entry = entries.get(viewType);
+    if (entry != null && entry.presenter == null) {
+      entries.remove(viewType);
+    }
+  }
+
+  /**
+   * @return the prewarmed presenter for the view's type, or null if there isn't one ready
+   */
+  synchronized Presenter claim(MVPView view) {
+    if (entries.isEmpty()) {
+      return null;
+    }
+    Entry entry = entries.remove(view.getClass());
+    //one still being built is left to be destroyed when it's offered
+    return entry == null ? null : entry.presenter;
+  }
+
+  synchronized List<Presenter> evictExpired() {
+    if (entries.isEmpty()) {
+      return Collections.emptyList();
+    }
+    long now = clock.uptimeMillis();
+    List<Presenter> evicted = Collections.emptyList();
+    for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+      Entry entry = iterator.next();
+      if (entry.presenter != null && now - entry.readyAtMillis >= timeoutMillis) {
+        iterator.remove();
+        if (evicted.isEmpty()) {
+          evicted = new ArrayList<>();
+        }
+        evicted.add(entry.presenter);
+      }
+    }
+    return evicted;
+  }
+
+  synchronized List<Presenter> clear() {
+    List<Presenter> evicted = new ArrayList<>();
+    for (Entry entry : entries.values()) {
+      if (entry.presenter != null) {
+        evicted.add(entry.presenter);
+      }
+    }
+    entries.clear();
+    return evicted;
+  }
+
+  /**
+   * Shared by every service that isn't given a scheduler, created the first time one is needed.  Its one daemon thread only
+   * checks timestamps, the service hands expired presenters to its destroy executor or else the prewarm executor.
+   */
+  static ScheduledExecutorService defaultExpiryScheduler() {
+    return DefaultExpiryScheduler.INSTANCE;
+  }
+
+  private static final class DefaultExpiryScheduler {
+    static final ScheduledExecutorService INSTANCE = create();
+
+    private static ScheduledExecutorService create() {
+      return new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "mvp-prewarm-expiry");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+  }
+
+  private static final class Entry {
+    //null while it is being built
+    Presenter presenter;
+    long readyAtMillis;
+  }
+}
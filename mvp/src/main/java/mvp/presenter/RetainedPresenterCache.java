@@ -0,0 +1,297 @@
+package mvp.presenter;
+
+import android.content.ComponentCallbacks2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import mvp.presenter.PresenterServiceImpl.PresenterNode;
+
+/**
+ * Keeps track of presenters whose view was dropped with retain, in least recently used order.  Without a bound a retained
+ * presenter whose activity never comes back (task swiped away, bundle lost) would live as long as the process.
+ *
+ * Only detached presenters are ever in the cache, a presenter leaves it as soon as a view is bound to it again.  The cache
+ * only picks what to evict, {@link PresenterServiceImpl} destroys them.
+ *
+ * With a byte budget each presenter is measured by a {@link PresenterSizeEstimator} as it is retained, and the least recently
+ * retained are evicted while the total is over the budget.  A count can't tell one presenter holding a big list from a few
+ * holding nothing, a byte budget can.
+ */
+public final class RetainedPresenterCache {
+  public static final int NO_LIMIT = Integer.MAX_VALUE;
+  public static final long NO_TTL = Long.MAX_VALUE;
+  public static final long NO_BYTE_LIMIT = Long.MAX_VALUE;
+
+  private final int maxRetained;
+  private final long ttlMillis;
+  private final long maxRetainedBytes;
+  private final PresenterSizeEstimator estimator;
+  private final Clock clock;
+
+  //least recently retained first, linked through the nodes so retaining doesn't allocate
+  private PresenterNode head;
+  private PresenterNode tail;
+  private int size;
+  private long retainedBytes;
+
+  private int reclaimed;
+  private int evictedForSize;
+  private int evictedForTtl;
+  private int evictedForMemory;
+  private int evictedForBytes;
+
+  /**
+   * @param maxRetained - most detached presenters kept, the least recently retained are evicted past this
+   * @param ttlMillis - how long a presenter is kept without a view
+   */
+  public RetainedPresenterCache(int maxRetained, long ttlMillis) {
+    this(maxRetained, ttlMillis, Clock.SYSTEM);
+  }
+
+  public RetainedPresenterCache(int maxRetained, long ttlMillis, Clock clock) {
+    this(maxRetained, ttlMillis, NO_BYTE_LIMIT, null, clock);
+  }
+
+  /**
+   * @param maxRetainedBytes - most estimated bytes kept across detached presenters, the least recently retained are evicted
+   * past this
+   * @param estimator - measures each presenter as it is retained
+   */
+  public RetainedPresenterCache(int maxRetained, long ttlMillis, long maxRetainedBytes, PresenterSizeEstimator estimator) {
+    this(maxRetained, ttlMillis, maxRetainedBytes, estimator, Clock.SYSTEM);
+  }
+
+  public RetainedPresenterCache(int maxRetained, long ttlMillis, long maxRetainedBytes, PresenterSizeEstimator estimator, Clock clock) {
+    if (maxRetained < 0 || ttlMillis < 0 || maxRetainedBytes < 0) {
+      throw new IllegalArgumentException("limits must not be negative");
+    }
+    if (maxRetainedBytes != NO_BYTE_LIMIT && estimator == null) {
+      throw new IllegalArgumentException("a byte limit needs an estimator");
+    }
+    this.maxRetained = maxRetained;
+    this.ttlMillis = ttlMillis;
+    this.maxRetainedBytes = maxRetainedBytes;
+    this.estimator = estimator;
+    this.clock = clock;
+  }
+
+  /**
+   * Keeps every retained presenter until its view comes back, how the service behaved before the cache existed
+   */
+  public static RetainedPresenterCache unbounded() {
+    return new RetainedPresenterCache(NO_LIMIT, NO_TTL);
+  }
+
+  public synchronized Stats getStats() {
+    return new Stats(size, retainedBytes, reclaimed, evictedForSize, evictedForTtl, evictedForMemory, evictedForBytes);
+  }
+
+  /**
+   * @return presenters evicted to make room
+   */
+  List<PresenterNode> retain(PresenterNode node) {
+    //walking the presenter is the slow part, done before taking the lock
+    long bytes = measure(node);
+    synchronized (this) {
+      return retain(node, bytes);
+    }
+  }
+
+  private List<PresenterNode> retain(PresenterNode node, long bytes) {
+    if (node.evicted) {
+      return Collections.emptyList();
+    }
+    unlink(node);
+    node.retainedAtMillis = clock.uptimeMillis();
+    node.retainedBytes = bytes;
+    retainedBytes += bytes;
+    node.retained = true;
+    node.retainedPrev = tail;
+    if (tail == null) {
+      head = node;
+    } else {
+      tail.retainedNext = node;
+    }
+    tail = node;
+    size++;
+
+    List<PresenterNode> evicted = evictExpired();
+    while (size > maxRetained) {
+      evicted = evict(head, evicted);
+      evictedForSize++;
+    }
+    while (retainedBytes > maxRetainedBytes) {
+      evicted = evict(head, evicted);
+      evictedForBytes++;
+    }
+    return evicted;
+  }
+
+  private long measure(PresenterNode node) {
+    Presenter presenter = node.getPresenter();
+    if (estimator == null || presenter == null) {
+      return 0;
+    }
+    return estimator.estimate(presenter);
+  }
+
+  /**
+   * Called when a view is bound to the presenter again
+   *
+   * @return false if the presenter has already been evicted and must not be used
+   */
+  synchronized boolean reclaim(PresenterNode node) {
+    if (node.evicted) {
+      return false;
+    }
+    if (node.retained) {
+      unlink(node);
+      reclaimed++;
+    }
+    return true;
+  }
+
+  /**
+   * Called when the presenter is destroyed for any other reason
+   */
+  synchronized void remove(PresenterNode node) {
+    unlink(node);
+    node.evicted = true;
+  }
+
+  synchronized List<PresenterNode> evictExpired() {
+    if (ttlMillis == NO_TTL) {
+      return Collections.emptyList();
+    }
+    long now = clock.uptimeMillis();
+    List<PresenterNode> evicted = Collections.emptyList();
+    while (head != null && now - head.retainedAtMillis >= ttlMillis) {
+      evicted = evict(head, evicted);
+      evictedForTtl++;
+    }
+    return evicted;
+  }
+
+  /**
+   * @param level - one of the {@link ComponentCallbacks2} TRIM_MEMORY levels
+   */
+  synchronized List<PresenterNode> trimMemory(int level) {
+    List<PresenterNode> evicted = evictExpired();
+    int keep;
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+      keep = 0;
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      keep = size / 2;
+    } else {
+      keep = size;
+    }
+    while (size > keep) {
+      evicted = evict(head, evicted);
+      evictedForMemory++;
+    }
+    return evicted;
+  }
+
+  private List<PresenterNode> evict(PresenterNode node, List<PresenterNode> evicted) {
+    unlink(node);
+    node.evicted = true;
+    if (evicted.isEmpty()) {
+      evicted = new ArrayList<>();
+    }
+    evicted.add(node);
+    return evicted;
+  }
+
+  private void unlink(PresenterNode node) {
+    if (!node.retained) {
+      return;
+    }
+    if (node.retainedPrev == null) {
+      head = node.retainedNext;
+    } else {
+      node.retainedPrev.retainedNext = node.retainedNext;
+    }
+    if (node.retainedNext == null) {
+      tail = node.retainedPrev;
+    } else {
+      node.retainedNext.retainedPrev = node.retainedPrev;
+    }
+    node.retainedPrev = null;
+    node.retainedNext = null;
+    node.retained = false;
+    size--;
+    retainedBytes -= node.retainedBytes;
+    node.retainedBytes = 0;
+  }
+
+  public static final class Stats {
+    private final int retained;
+    private final long retainedBytes;
+    private final int reclaimed;
+    private final int evictedForSize;
+    private final int evictedForTtl;
+    private final int evictedForMemory;
+    private final int evictedForBytes;
+
+    Stats(int retained, long retainedBytes, int reclaimed, int evictedForSize, int evictedForTtl, int evictedForMemory,
+        int evictedForBytes) {
+      this.retained = retained;
+      this.retainedBytes = retainedBytes;
+      this.reclaimed = reclaimed;
+      this.evictedForSize = evictedForSize;
+      this.evictedForTtl = evictedForTtl;
+      this.evictedForMemory = evictedForMemory;
+      this.evictedForBytes = evictedForBytes;
+    }
+
+    /**
+     * Detached presenters currently held
+     */
+    public int getRetained() {
+      return retained;
+    }
+
+    /**
+     * Estimated bytes the detached presenters hold as measured when they were retained, 0 without an estimator
+     */
+    public long getRetainedBytes() {
+      return retainedBytes;
+    }
+
+    /**
+     * Retained presenters that got their view back
+     */
+    public int getReclaimed() {
+      return reclaimed;
+    }
+
+    public int getEvictedForSize() {
+      return evictedForSize;
+    }
+
+    public int getEvictedForTtl() {
+      return evictedForTtl;
+    }
+
+    public int getEvictedForMemory() {
+      return evictedForMemory;
+    }
+
+    public int getEvictedForBytes() {
+      return evictedForBytes;
+    }
+
+    public int getEvicted() {
+      return evictedForSize + evictedForTtl + evictedForMemory + evictedForBytes;
+    }
+
+    @Override
+    public String toString() {
+      return "RetainedPresenterCache.Stats{retained=" + retained + ", retainedBytes=" + retainedBytes + ", reclaimed=" + reclaimed
+          + ", evictedForSize=" + evictedForSize + ", evictedForTtl=" + evictedForTtl + ", evictedForMemory=" + evictedForMemory
+          + ", evictedForBytes=" + evictedForBytes + "}";
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package mvp.presenter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Opt in for presenters whose state should survive the process being killed.  The state is written as a compact binary
+ * snapshot into the activity's saved instance state and read back into the new presenter before it takes its view, so a
+ * restored screen can render from what it had rather than fetching everything again.
+ *
+ * Only root presenters, those bound with {@link PresenterService#takeView}, are snapshotted.  Keep the state small, the
+ * bundle goes through binder along with everything else the activity saves.
+ */
+public interface RetainedState {
+
+  void writeState(DataOutput out) throws IOException;
+
+  /**
+   * Called on a freshly created presenter before {@link Presenter#takeView}.
+   *
+   * @throws IOException if the snapshot can't be read, for example it was written by an older version of the presenter.  The
+   * presenter carries on as if there was no snapshot so it must still be usable.
+   */
+  void readState(DataInput in) throws IOException;
+}
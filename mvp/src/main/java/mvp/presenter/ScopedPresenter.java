@@ -0,0 +1,10 @@
+package mvp.presenter;
+
+/**
+ * Implemented by presenters that own a {@link PresenterSubscriptions}, the presenter attaches it when it takes a view and
+ * detaches it when the view is dropped, and the service unsubscribes it when the presenter is destroyed.
+ * {@link AbstractPresenter} implements it.
+ */
+public interface ScopedPresenter {
+  PresenterSubscriptions getSubscriptions();
+}
@@ -0,0 +1,16 @@
+package mvp.presenter;
+
+/**
+ * Implemented by presenters that know roughly how much memory they hold, for example bitmaps or cursor windows whose data
+ * lives outside the Java heap where {@link PresenterSizeEstimator} can't see it.  The reported size is used instead of the
+ * estimate.
+ */
+public interface SizedPresenter {
+
+  /**
+   * Called off the presenter's callbacks, possibly on another thread, so only read what is safe to read racily
+   *
+   * @return bytes this presenter keeps alive, not counting its view
+   */
+  long getRetainedBytes();
+}
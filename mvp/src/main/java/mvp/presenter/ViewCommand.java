@@ -0,0 +1,10 @@
+package mvp.presenter;
+
+import mvp.MVPView;
+
+/**
+ * An update for the view, run straight away if the presenter has a view or queued until it gets one
+ */
+public interface ViewCommand<VIEW extends MVPView> {
+  void apply(VIEW view);
+}
@@ -0,0 +1,123 @@
+package mvp.presenter;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mvp.MVPView;
+
+/**
+ * Sits between a presenter and its view so updates made while the view is away, between a rotation dropping it and the
+ * new one being taken, aren't lost.  Commands posted without a view are queued and the whole queue is applied in one go
+ * when the next view is attached.
+ *
+ * Commands posted with the same key coalesce, only the latest is kept so a list that was updated five times while
+ * detached is rendered once.  A coalesced command moves to the back of the queue, so the replay order is the order of
+ * each key's last update.  Commands without a key are all kept.
+ *
+ * With a {@link FrameTicker} set, commands posted while there is a view are also queued and applied together at the
+ * next frame, so a presenter fed by a fast stream updates its view at most once a frame with the latest of each key.
+ *
+ * Posting is safe from any thread, commands are applied on the thread that posts them, attaches the view or ticks.
+ */
+public final class ViewCommandQueue<VIEW extends MVPView> {
+  private final Map<Object, ViewCommand<VIEW>> pending = new LinkedHashMap<>();
+  private VIEW view;
+  private FrameTicker frameTicker;
+  private boolean tickPending;
+  private final Runnable tick = new Runnable() {
+    @Override
+    public void run() {
+      onTick();
+    }
+  };
+
+  /**
+   * @param frameTicker - ticks to apply queued commands on, or null to apply commands as soon as they are posted
+   */
+  public synchronized void setFrameTicker(@Nullable FrameTicker frameTicker) {
+    this.frameTicker = frameTicker;
+    tickPending = false;
+    if (frameTicker == null && view != null) {
+      flush();
+    } else {
+      requestTick();
+    }
+  }
+
+  /**
+   * @param key - commands with an equal key replace each other while queued, null to always keep the command
+   */
+  public synchronized void post(@Nullable Object key, ViewCommand<VIEW> command) {
+    if (view != null && frameTicker == null) {
+      command.apply(view);
+      return;
+    }
+    if (key == null) {
+      //nothing else can be equal to it
+      key = new Object();
+    } else {
+      pending.remove(key);
+    }
+    pending.put(key, command);
+    requestTick();
+  }
+
+  /**
+   * Applies everything queued while there was no view, commands posted from now on are applied straight away or, with a
+   * frame ticker, at the next tick
+   */
+  public synchronized void attach(VIEW view) {
+    this.view = view;
+    //straight away rather than at the next tick, the first frame should show it
+    flush();
+  }
+
+  //callers hold this
+  private void flush() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    List<ViewCommand<VIEW>> batch = new ArrayList<>(pending.values());
+    pending.clear();
+    for (int i = 0; i < batch.size(); i++) {
+      batch.get(i).apply(view);
+    }
+  }
+
+  private synchronized void onTick() {
+    tickPending = false;
+    if (view != null) {
+      flush();
+    }
+  }
+
+  //callers hold this
+  private void requestTick() {
+    if (frameTicker != null && view != null && !tickPending && !pending.isEmpty()) {
+      tickPending = true;
+      frameTicker.postTick(tick);
+    }
+  }
+
+  /**
+   * Commands are queued until the next view is attached
+   */
+  public synchronized void detach() {
+    view = null;
+  }
+
+  /**
+   * Drops everything queued, for when the presenter is destroyed or its state is reset
+   */
+  public synchronized void clear() {
+    pending.clear();
+  }
+
+  public synchronized int size() {
+    return pending.size();
+  }
+}
@@ -0,0 +1,17 @@
+package mvp.presenter;
+
+import android.support.annotation.Nullable;
+
+import mvp.MVPView;
+
+/**
+ * Generated for each interface annotated with @ViewState, pushes a new state to the view by calling the setters of only the
+ * fields that differ from the state it was last given.
+ */
+public interface ViewStateDiffer<S, VIEW extends MVPView> {
+
+  /**
+   * @param previous - the state the view was last given, null for a view that has been given nothing so every setter is called
+   */
+  void apply(@Nullable S previous, S next, VIEW view);
+}
@@ -0,0 +1,72 @@
+package mvp.presenter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps a view class to the position of the presenter view type it should get, used by the generated PresenterFactoryImpl
+ * to switch straight to the right constructor.  A view class is resolved against every view type the first time it is seen,
+ * after that it is a single map lookup however many presenters there are.
+ *
+ * When a view matches several view types the most specific wins, the one that is a subtype of all the others.  If there
+ * isn't one, say an activity implementing two unrelated views, there is no right answer and it fails rather than picking
+ * whichever happened to be declared first.
+ */
+public final class ViewTypeIndex {
+  public static final int NOT_FOUND = -1;
+
+  private final Class<?>[] viewTypes;
+  private final ConcurrentMap<Class<?>, Integer> indices = new ConcurrentHashMap<>();
+
+  /**
+   * @param viewTypes - the view type of each presenter, the index returned is the position in here
+   */
+  public ViewTypeIndex(Class<?>... viewTypes) {
+    this.viewTypes = viewTypes.clone();
+  }
+
+  /**
+   * @return the view types in the order they were given
+   */
+  public List<Class<?>> getViewTypes() {
+    return Collections.unmodifiableList(Arrays.asList(viewTypes));
+  }
+
+  /**
+   * @return the position of the most specific view type the view class is assignable to, or {@link #NOT_FOUND}
+   * @throws IllegalStateException if it matches several view types and none of them is more specific than the rest
+   */
+  public int indexOf(Class<?> viewClass) {
+    Integer index = indices.get(viewClass);
+    if (index == null) {
+      index = resolve(viewClass);
+      indices.putIfAbsent(viewClass, index);
+    }
+    return index;
+  }
+
+  private int resolve(Class<?> viewClass) {
+    int best = NOT_FOUND;
+    for (int i = 0; i < viewTypes.length; i++) {
+      if (!viewTypes[i].isAssignableFrom(viewClass)) {
+        continue;
+      }
+      if (best == NOT_FOUND || viewTypes[best].isAssignableFrom(viewTypes[i])) {
+        best = i;
+      }
+    }
+    if (best == NOT_FOUND) {
+      return NOT_FOUND;
+    }
+    for (int i = 0; i < viewTypes.length; i++) {
+      if (viewTypes[i].isAssignableFrom(viewClass) && !viewTypes[i].isAssignableFrom(viewTypes[best])) {
+        throw new IllegalStateException(viewClass.getName() + " is both a " + viewTypes[best].getName() + " and a "
+            + viewTypes[i].getName() + ", neither presenter is more specific");
+      }
+    }
+    return best;
+  }
+}
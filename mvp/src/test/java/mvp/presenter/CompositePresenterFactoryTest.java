@@ -0,0 +1,112 @@
+package mvp.presenter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+import mvp.MVPView;
+
+import static org.mockito.Mockito.mock;
+
+public class CompositePresenterFactoryTest {
+
+  interface HomeView extends MVPView {
+  }
+
+  interface TabletHomeView extends HomeView {
+  }
+
+  interface DetailView extends MVPView {
+  }
+
+  abstract static class HomePresenter implements Presenter<HomeView> {
+  }
+
+  abstract static class DetailPresenter implements Presenter<DetailView> {
+  }
+
+  @Test
+  public void testCreatePresenter_eachModuleFound() {
+    ModuleFactory home = new ModuleFactory(HomeView.class);
+    ModuleFactory detail = new ModuleFactory(DetailView.class);
+    CompositePresenterFactory factory = new CompositePresenterFactory(home, detail);
+
+    Assert.assertSame(detail.presenters[0], factory.createPresenter(mock(DetailView.class)));
+    Assert.assertSame(home.presenters[0], factory.createPresenterForType(HomeView.class));
+  }
+
+  @Test
+  public void testCreatePresenter_mostSpecificAcrossModules() {
+    ModuleFactory home = new ModuleFactory(HomeView.class);
+    ModuleFactory tablet = new ModuleFactory(DetailView.class, TabletHomeView.class);
+    CompositePresenterFactory factory = new CompositePresenterFactory(home, tablet);
+
+    Assert.assertSame(tablet.presenters[1], factory.createPresenter(mock(TabletHomeView.class)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testConstruct_sameViewInTwoModules_exception() {
+    new CompositePresenterFactory(new ModuleFactory(HomeView.class), new ModuleFactory(DetailView.class, HomeView.class));
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testCreatePresenter_unknownView_exception() {
+    new CompositePresenterFactory(new ModuleFactory(HomeView.class)).createPresenterForType(DetailView.class);
+  }
+
+  @Test
+  public void testGetLifecycleMask_fromOwningModule() {
+    ModuleFactory home = new ModuleFactory(HomeView.class);
+    home.lifecycleMasks = new LifecycleMask(new Class<?>[] {HomePresenter.class}, new int[] {LifecycleMask.PAUSE});
+    ModuleFactory detail = new ModuleFactory(DetailView.class);
+    detail.lifecycleMasks = new LifecycleMask(new Class<?>[] {DetailPresenter.class}, new int[] {LifecycleMask.NONE});
+    CompositePresenterFactory factory = new CompositePresenterFactory(home, detail);
+
+    Assert.assertEquals(LifecycleMask.PAUSE, factory.getLifecycleMask(HomePresenter.class));
+    Assert.assertEquals(LifecycleMask.NONE, factory.getLifecycleMask(DetailPresenter.class));
+    Assert.assertEquals(LifecycleMask.UNKNOWN, factory.getLifecycleMask(Presenter.class));
+  }
+
+  /**
+   * What the processor generates for a module
+   */
+  static class ModuleFactory implements PresenterModuleFactory, PresenterLifecycleMasks {
+    final ViewTypeIndex viewTypes;
+    final Presenter[] presenters;
+    LifecycleMask lifecycleMasks = new LifecycleMask(new Class<?>[0], new int[0]);
+
+    ModuleFactory(Class<?>... viewTypes) {
+      this.viewTypes = new ViewTypeIndex(viewTypes);
+      presenters = new Presenter[viewTypes.length];
+      for (int i = 0; i < presenters.length; i++) {
+        presenters[i] = mock(Presenter.class);
+      }
+    }
+
+    @Override
+    public List<Class<?>> getViewTypes() {
+      return viewTypes.getViewTypes();
+    }
+
+    @Override
+    public Presenter createPresenterAt(int index) {
+      return presenters[index];
+    }
+
+    @Override
+    public Presenter createPresenterForType(Class<? extends MVPView> viewType) {
+      return createPresenterAt(viewTypes.indexOf(viewType));
+    }
+
+    @Override
+    public Presenter createPresenter(MVPView view) {
+      return createPresenterForType(view.getClass());
+    }
+
+    @Override
+    public int getLifecycleMask(Class<? extends Presenter> presenterType) {
+      return lifecycleMasks.get(presenterType);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package mvp.presenter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PresenterLatencyHistogramsTest {
+
+  PresenterLatencyHistograms histograms;
+
+  @Before
+  public void setup() {
+    histograms = new PresenterLatencyHistograms();
+  }
+
+  @Test
+  public void testGetHistogram_nothingRecorded_empty() {
+    PresenterLatencyHistograms.Histogram histogram = histograms.getHistogram(Presenter.class, PresenterCallback.RESUME);
+
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0, histogram.getPercentileNanos(99));
+  }
+
+  @Test
+  public void testRecord_countsTotalsAndMax() {
+    histograms.record(Presenter.class, PresenterCallback.RESUME, 100);
+    histograms.record(Presenter.class, PresenterCallback.RESUME, 300);
+    histograms.record(Presenter.class, PresenterCallback.PAUSE, 5);
+
+    PresenterLatencyHistograms.Histogram histogram = histograms.getHistogram(Presenter.class, PresenterCallback.RESUME);
+    Assert.assertEquals(2, histogram.getCount());
+    Assert.assertEquals(400, histogram.getTotalNanos());
+    Assert.assertEquals(200, histogram.getMeanNanos());
+    Assert.assertEquals(300, histogram.getMaxNanos());
+  }
+
+  @Test
+  public void testGetPercentileNanos_withinBucket() {
+    for (int i = 0; i < 99; i++) {
+      histograms.record(Presenter.class, PresenterCallback.DESTROY, 1000);
+    }
+    histograms.record(Presenter.class, PresenterCallback.DESTROY, 1000000);
+
+    PresenterLatencyHistograms.Histogram histogram = histograms.getHistogram(Presenter.class, PresenterCallback.DESTROY);
+    //1000 lands in the 512-1023 bucket
+    Assert.assertEquals(1023, histogram.getPercentileNanos(50));
+    Assert.assertEquals(1023, histogram.getPercentileNanos(99));
+    Assert.assertEquals(1000000, histogram.getPercentileNanos(100));
+  }
+
+  @Test
+  public void testBucket_powersOfTwo() {
+    Assert.assertEquals(0, PresenterLatencyHistograms.bucket(0));
+    Assert.assertEquals(1, PresenterLatencyHistograms.bucket(1));
+    Assert.assertEquals(2, PresenterLatencyHistograms.bucket(2));
+    Assert.assertEquals(2, PresenterLatencyHistograms.bucket(3));
+    Assert.assertEquals(11, PresenterLatencyHistograms.bucket(1024));
+  }
+}
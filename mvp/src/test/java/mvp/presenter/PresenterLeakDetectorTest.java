@@ -0,0 +1,81 @@
+package mvp.presenter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PresenterLeakDetectorTest {
+
+  PresenterServiceImplTest.ManualClock clock;
+  List<PresenterLeakDetector.Leak> reported;
+  PresenterLeakDetector detector;
+
+  @Before
+  public void setup() {
+    clock = new PresenterServiceImplTest.ManualClock();
+    reported = new ArrayList<>();
+    detector = new PresenterLeakDetector(new PresenterLeakDetector.Listener() {
+      @Override
+      public void onLeak(PresenterLeakDetector.Leak leak) {
+        reported.add(leak);
+      }
+    }, 100, clock);
+  }
+
+  @Test
+  public void testCheck_stillReachablePastGrace_reportedWithPresenterClass() {
+    Object view = new Object();
+    detector.watch(view, AbstractPresenter.class, PresenterLeakDetector.Kind.DROPPED_VIEW);
+    clock.now = 150;
+
+    List<PresenterLeakDetector.Leak> leaks = detector.check(false);
+
+    Assert.assertEquals(1, leaks.size());
+    Assert.assertEquals(leaks, reported);
+    PresenterLeakDetector.Leak leak = leaks.get(0);
+    Assert.assertEquals(Object.class.getName(), leak.getLeakedClassName());
+    Assert.assertEquals(AbstractPresenter.class, leak.getPresenterClass());
+    Assert.assertEquals(PresenterLeakDetector.Kind.DROPPED_VIEW, leak.getKind());
+    Assert.assertEquals(150, leak.getRetainedMillis());
+  }
+
+  @Test
+  public void testCheck_withinGrace_notReported() {
+    Object view = new Object();
+    detector.watch(view, AbstractPresenter.class, PresenterLeakDetector.Kind.DROPPED_VIEW);
+    clock.now = 99;
+
+    Assert.assertTrue(detector.check(false).isEmpty());
+    Assert.assertEquals(1, detector.getWatchedCount());
+  }
+
+  @Test
+  public void testCheck_reportedOnce() {
+    Object presenter = new Object();
+    detector.watch(presenter, AbstractPresenter.class, PresenterLeakDetector.Kind.DESTROYED_PRESENTER);
+    clock.now = 100;
+
+    detector.check(false);
+    detector.check(false);
+
+    Assert.assertEquals(1, reported.size());
+    Assert.assertEquals(0, detector.getWatchedCount());
+  }
+
+  @Test
+  public void testCheck_collected_notReported() {
+    detector.watch(new Object(), AbstractPresenter.class, PresenterLeakDetector.Kind.DROPPED_VIEW);
+    clock.now = 100;
+
+    //a collection is only a request, give it a few goes
+    for (int i = 0; i < 10 && detector.getWatchedCount() > 0; i++) {
+      Assert.assertTrue(detector.check(true).isEmpty());
+    }
+
+    Assert.assertTrue(reported.isEmpty());
+    Assert.assertEquals(0, detector.getWatchedCount());
+  }
+}
@@ -20,7 +20,7 @@ public class PresenterLifecycleListenerImplTest {
   PresenterServiceImpl presenterService;
   PresenterLifecycleListenerImpl lifecycleListener;
   Presenter presenter;
-  String testPresenterId;
+  long testPresenterId;
   Bundle bundle;
 
   @Before
@@ -28,9 +28,9 @@ public class PresenterLifecycleListenerImplTest {
     presenterService = spy(new PresenterServiceImpl(mock(PresenterFactory.class)));
     presenter = mock(Presenter.class);
 
-    PresenterServiceImpl.PresenterNode node = new PresenterServiceImpl.PresenterNode(presenter);
+    PresenterServiceImpl.PresenterNode node = new PresenterServiceImpl.PresenterNode(1, presenter);
     presenterService.presenters.put(node.getId(), node);
-    testPresenterId = presenterService.currentParentId;
+    testPresenterId = node.getId();
 
     lifecycleListener = new PresenterLifecycleListenerImpl(presenterService, testPresenterId);
 
@@ -40,13 +40,13 @@ public class PresenterLifecycleListenerImplTest {
   @Test
   public void testOnResume_presenterOnResume() {
     lifecycleListener.onResume();
-    verify(presenterService).onPresenterResumed(testPresenterId);
+    verify(presenterService).onPresenterViewResumed(testPresenterId);
   }
 
   @Test
   public void testOnPause_presenterOnPause() {
     lifecycleListener.onPause();
-    verify(presenterService).onPresenterPaused(testPresenterId);
+    verify(presenterService).onPresenterViewPaused(testPresenterId);
   }
 
   @Test
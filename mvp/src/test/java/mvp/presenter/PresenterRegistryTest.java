@@ -0,0 +1,125 @@
+package mvp.presenter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.mockito.Mockito.mock;
+
+public class PresenterRegistryTest {
+
+  PresenterRegistry registry;
+
+  @Before
+  public void setup() {
+    registry = new PresenterRegistry();
+  }
+
+  @Test
+  public void testPut_isReturned() {
+    PresenterServiceImpl.PresenterNode node = new PresenterServiceImpl.PresenterNode(1, mock(Presenter.class));
+    registry.put(node.getId(), node);
+
+    Assert.assertSame(node, registry.get(1));
+    Assert.assertEquals(1, registry.size());
+  }
+
+  @Test
+  public void testGet_unknownId_null() {
+    Assert.assertNull(registry.get(1));
+    Assert.assertNull(registry.get(PresenterServiceImpl.NO_PRESENTER_ID));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPut_noPresenterId_exception() {
+    registry.put(PresenterServiceImpl.NO_PRESENTER_ID, new PresenterServiceImpl.PresenterNode(1, mock(Presenter.class)));
+  }
+
+  @Test
+  public void testRemove_otherPresentersStillFound() {
+    for (long id = 1; id <= 1000; id++) {
+      registry.put(id, new PresenterServiceImpl.PresenterNode(id, mock(Presenter.class)));
+    }
+
+    for (long id = 1; id <= 1000; id += 2) {
+      Assert.assertNotNull(registry.remove(id));
+    }
+
+    Assert.assertEquals(500, registry.size());
+    for (long id = 1; id <= 1000; id++) {
+      Assert.assertEquals(id % 2 == 0, registry.containsKey(id));
+    }
+  }
+
+  @Test
+  public void testRemove_unknownId_null() {
+    Assert.assertNull(registry.remove(1));
+  }
+
+  @Test
+  public void testPut_childLinkedToParent() {
+    PresenterServiceImpl.PresenterNode parent = new PresenterServiceImpl.PresenterNode(1, mock(Presenter.class));
+    PresenterServiceImpl.PresenterNode child = new PresenterServiceImpl.PresenterNode(2, mock(Presenter.class), 1);
+    registry.put(parent.getId(), parent);
+    registry.put(child.getId(), child);
+
+    Assert.assertEquals(1, parent.getChildren().size());
+    Assert.assertSame(child, parent.getChildren().get(0));
+  }
+
+  @Test
+  public void testRemove_childUnlinkedFromParent() {
+    PresenterServiceImpl.PresenterNode parent = new PresenterServiceImpl.PresenterNode(1, mock(Presenter.class));
+    PresenterServiceImpl.PresenterNode child = new PresenterServiceImpl.PresenterNode(2, mock(Presenter.class), 1);
+    registry.put(parent.getId(), parent);
+    registry.put(child.getId(), child);
+
+    registry.remove(child.getId());
+
+    Assert.assertTrue(parent.getChildren().isEmpty());
+  }
+
+  @Test
+  public void testResize_childrenNotDuplicated() {
+    PresenterServiceImpl.PresenterNode parent = new PresenterServiceImpl.PresenterNode(1, mock(Presenter.class));
+    registry.put(parent.getId(), parent);
+    for (long id = 2; id <= 100; id++) {
+      registry.put(id, new PresenterServiceImpl.PresenterNode(id, mock(Presenter.class), 1));
+    }
+
+    Assert.assertEquals(99, parent.getChildren().size());
+  }
+
+  @Test
+  public void testGet_whileOtherThreadWrites_presentNodeAlwaysFound() throws InterruptedException {
+    final PresenterServiceImpl.PresenterNode node = new PresenterServiceImpl.PresenterNode(1, mock(Presenter.class));
+    registry.put(node.getId(), node);
+
+    final AtomicBoolean missed = new AtomicBoolean();
+    final AtomicBoolean done = new AtomicBoolean();
+    Thread reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (!done.get()) {
+          if (registry.get(1) != node) {
+            missed.set(true);
+          }
+        }
+      }
+    });
+    reader.start();
+
+    //enough churn to force resizes and removed slots around the live entry
+    for (long id = 2; id < 20000; id++) {
+      registry.put(id, node);
+      registry.remove(id);
+    }
+    done.set(true);
+    reader.join();
+
+    Assert.assertFalse(missed.get());
+    Assert.assertEquals(1, registry.size());
+  }
+}
@@ -1,29 +1,53 @@
 package mvp.presenter;
 
+import android.content.ComponentCallbacks2;
 import android.os.Bundle;
 
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import mvp.MVPView;
+import rx.Observer;
+import rx.subjects.PublishSubject;
 
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest(Bundle.class)
 public class PresenterServiceImplTest {
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   PresenterServiceImpl presenterService;
   PresenterFactory presenterFactory;
   Bundle bundle;
@@ -75,9 +99,10 @@ public class PresenterServiceImplTest {
     //create the presenter
     presenterService.takeView(view, null);
 
-    String id = presenterService.currentParentId;
+    long id = presenterService.currentParentId;
     when(bundle.containsKey(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(true);
-    when(bundle.getString(anyString())).thenReturn(id);
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(id);
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_EPOCH_KEY)).thenReturn(presenterService.epoch);
 
     presenterService.savePresenter(id, bundle);
 
@@ -97,8 +122,9 @@ public class PresenterServiceImplTest {
     //create the presenter
     presenterService.takeView(view, null);
 
-    String id = presenterService.currentParentId;
-    when(bundle.getString(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(id);
+    long id = presenterService.currentParentId;
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(id);
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_EPOCH_KEY)).thenReturn(presenterService.epoch);
     when(bundle.containsKey(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(true);
     presenterService.savePresenter(id, bundle);
 
@@ -117,8 +143,9 @@ public class PresenterServiceImplTest {
     //create the presenter
     presenterService.takeView(view, null);
 
-    String id = presenterService.currentParentId;
-    when(bundle.getString(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(id);
+    long id = presenterService.currentParentId;
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(id);
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_EPOCH_KEY)).thenReturn(presenterService.epoch);
     when(bundle.containsKey(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(true);
     presenterService.savePresenter(id, bundle);
 
@@ -137,10 +164,11 @@ public class PresenterServiceImplTest {
 
     //create the presenter
     presenterService.takeView(view, null);
-    when(bundle.getString(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn("invalid ID");
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(-1L);
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_EPOCH_KEY)).thenReturn(presenterService.epoch);
     when(bundle.containsKey(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(true);
 
-    presenterService.savePresenter("invalid ID", bundle);
+    presenterService.savePresenter(-1, bundle);
 
     //don't create the presenter again, should be the same presenter
     presenterService.takeView(view, bundle);
@@ -148,6 +176,27 @@ public class PresenterServiceImplTest {
     Assert.assertEquals(presenterService.getCurrentParent(), presenter2);
   }
 
+  @Test
+  public void testTakeView_idSavedByPreviousProcess_CreateNewPresenter() {
+    MVPView view = mock(MVPView.class);
+    Presenter presenter = mock(Presenter.class);
+    Presenter presenter2 = mock(Presenter.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter).thenReturn(presenter2);
+
+    //create the presenter
+    presenterService.takeView(view, null);
+
+    long id = presenterService.currentParentId;
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(id);
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_EPOCH_KEY)).thenReturn(presenterService.epoch - 1);
+    when(bundle.containsKey(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(true);
+
+    //same handle but a different process, should not be reused
+    presenterService.takeView(view, bundle);
+
+    Assert.assertEquals(presenterService.getCurrentParent(), presenter2);
+  }
+
   @Test
   public void testTakeChild_CurrentPresenterRemainsTheSame() {
     MVPView view = mock(MVPView.class);
@@ -208,7 +257,7 @@ public class PresenterServiceImplTest {
     MVPView view = mock(MVPView.class);
     Presenter presenter = mock(Presenter.class);
     when(presenter.getView()).thenReturn(view);
-    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(presenter);
+    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(1, presenter);
     presenterService.presenters.put(presenterNode.getId(), presenterNode);
     presenter.takeView(view);
 
@@ -221,7 +270,7 @@ public class PresenterServiceImplTest {
   public void testDropChild_ViewIsNull_verifyPresenterDoesNotDropView() {
     MVPView view = mock(MVPView.class);
     Presenter presenter = mock(Presenter.class);
-    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(presenter);
+    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(1, presenter);
     presenterService.presenters.put(presenterNode.getId(), presenterNode);
     presenter.takeView(view);
 
@@ -235,7 +284,7 @@ public class PresenterServiceImplTest {
     MVPView view = mock(MVPView.class);
     Presenter presenter = mock(Presenter.class);
     when(presenter.getView()).thenReturn(view);
-    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(presenter);
+    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(1, presenter);
     presenterService.presenters.put(presenterNode.getId(), presenterNode);
     presenter.takeView(view);
 
@@ -249,7 +298,7 @@ public class PresenterServiceImplTest {
     MVPView view = mock(MVPView.class);
     Presenter presenter = mock(Presenter.class);
     when(presenter.getView()).thenReturn(view);
-    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(presenter);
+    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(1, presenter);
     presenterService.presenters.put(presenterNode.getId(), presenterNode);
     presenterService.currentParentId = presenterNode.getId();
     presenter.takeView(view);
@@ -264,7 +313,7 @@ public class PresenterServiceImplTest {
     MVPView view = mock(MVPView.class);
     Presenter presenter = mock(Presenter.class);
     when(presenter.getView()).thenReturn(view);
-    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(presenter);
+    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(1, presenter);
     presenterService.presenters.put(presenterNode.getId(), presenterNode);
     presenterService.currentParentId = presenterNode.getId();
     presenter.takeView(view);
@@ -278,33 +327,33 @@ public class PresenterServiceImplTest {
   public void testDropView_onUnknownId_dropViewNeverCalled() {
     MVPView view = mock(MVPView.class);
     Presenter presenter = mock(Presenter.class);
-    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(presenter);
+    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(1, presenter);
     presenterService.presenters.put(presenterNode.getId(), presenterNode);
     presenterService.currentParentId = presenterNode.getId();
     presenter.takeView(view);
 
-    presenterService.dropView("UKNOWN", true);
+    presenterService.dropView(-1, true);
 
     verify(presenter, never()).dropView();
   }
 
   @Test(expected = RuntimeException.class)
   public void testGetPresenter_unknownId_exception() {
-    presenterService.getPresenter("UNKNOWN");
+    presenterService.getPresenter(-1);
   }
 
   @Test
   public void testGetPresenter_isReturned() {
     Presenter presenter1 = mock(Presenter.class);
-    PresenterServiceImpl.PresenterNode presenterNode1 = new PresenterServiceImpl.PresenterNode(presenter1);
+    PresenterServiceImpl.PresenterNode presenterNode1 = new PresenterServiceImpl.PresenterNode(1, presenter1);
     presenterService.presenters.put(presenterNode1.getId(), presenterNode1);
 
     Presenter presenter2 = mock(Presenter.class);
-    PresenterServiceImpl.PresenterNode presenterNode2 = new PresenterServiceImpl.PresenterNode(presenter2);
+    PresenterServiceImpl.PresenterNode presenterNode2 = new PresenterServiceImpl.PresenterNode(2, presenter2);
     presenterService.presenters.put(presenterNode2.getId(), presenterNode2);
 
     Presenter presenter3 = mock(Presenter.class);
-    PresenterServiceImpl.PresenterNode presenterNode3 = new PresenterServiceImpl.PresenterNode(presenter3);
+    PresenterServiceImpl.PresenterNode presenterNode3 = new PresenterServiceImpl.PresenterNode(3, presenter3);
     presenterService.presenters.put(presenterNode3.getId(), presenterNode3);
 
     presenterService.getPresenter(presenterNode1.getId());
@@ -315,12 +364,22 @@ public class PresenterServiceImplTest {
   @Test
   public void testSavePresenter_savesId() {
     Presenter presenter = mock(Presenter.class);
-    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(presenter);
+    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(1, presenter);
     presenterService.presenters.put(presenterNode.getId(), presenterNode);
     presenterService.currentParentId = presenterNode.getId();
 
     presenterService.savePresenter(presenterNode.getId(), bundle);
-    verify(bundle).putString(PresenterServiceImpl.PRESENTER_ID_KEY, presenterNode.getId());
+    verify(bundle).putLong(PresenterServiceImpl.PRESENTER_ID_KEY, presenterNode.getId());
+  }
+
+  @Test
+  public void testSavePresenter_savesEpoch() {
+    Presenter presenter = mock(Presenter.class);
+    PresenterServiceImpl.PresenterNode presenterNode = new PresenterServiceImpl.PresenterNode(1, presenter);
+    presenterService.presenters.put(presenterNode.getId(), presenterNode);
+
+    presenterService.savePresenter(presenterNode.getId(), bundle);
+    verify(bundle).putLong(PresenterServiceImpl.PRESENTER_EPOCH_KEY, presenterService.epoch);
   }
 
   @Test
@@ -331,7 +390,7 @@ public class PresenterServiceImplTest {
 
     presenterService.takeView(view, null);
 
-    String currentParentId = presenterService.currentParentId;
+    long currentParentId = presenterService.currentParentId;
     presenterService.dropView(presenterService.currentParentId, false);
 
     Assert.assertFalse(presenterService.presenters.containsKey(currentParentId));
@@ -464,6 +523,59 @@ public class PresenterServiceImplTest {
     Assert.assertEquals(presenterService.presenters.size(), 0);
   }
 
+  @Test
+  public void testdropView_doNotRetain_OtherParentsChildrenAreNotDestroyed() {
+    MVPView view = mock(MVPView.class);
+    Presenter parent1 = mock(Presenter.class);
+    Presenter child1 = mock(Presenter.class);
+    Presenter parent2 = mock(Presenter.class);
+    Presenter child2 = mock(Presenter.class);
+
+    when(presenterFactory.createPresenter(view)).thenReturn(parent1).thenReturn(child1).thenReturn(parent2).thenReturn(child2);
+
+    presenterService.takeView(view, null);
+    long parent1Id = presenterService.currentParentId;
+    presenterService.takeChild(view);
+    presenterService.takeView(view, null);
+    presenterService.takeChild(view);
+
+    presenterService.dropView(parent1Id, false);
+
+    verify(child1).destroy();
+    verify(child2, never()).destroy();
+    Assert.assertEquals(presenterService.presenters.size(), 2);
+  }
+
+  @Test
+  public void testTakeChild_fromManyThreads_allChildrenAdded() throws InterruptedException {
+    MVPView view = mock(MVPView.class);
+    when(presenterFactory.createPresenter(any(MVPView.class))).thenReturn(mock(Presenter.class));
+    presenterService.takeView(view, null);
+
+    final MVPView childView = mock(MVPView.class);
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 250; j++) {
+            presenterService.takeChild(childView);
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assert.assertEquals(presenterService.presenters.size(), 1001);
+
+    presenterService.dropView(presenterService.currentParentId, false);
+
+    Assert.assertEquals(presenterService.presenters.size(), 0);
+  }
+
   @Test
   public void testTakeView_oldPresentersChildrenNotCleared() {
     MVPView view = mock(MVPView.class);
@@ -476,20 +588,883 @@ public class PresenterServiceImplTest {
     //create the presenter
     presenterService.takeView(view, null);
 
-    String id = presenterService.currentParentId;
-    when(bundle.getString(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(id);
+    long id = presenterService.currentParentId;
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(id);
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_EPOCH_KEY)).thenReturn(presenterService.epoch);
     when(bundle.containsKey(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(true);
 
     //add children
-    presenterService.presenters.put("1", new PresenterServiceImpl.PresenterNode(mock(Presenter.class)));
-    presenterService.presenters.put("2", new PresenterServiceImpl.PresenterNode(mock(Presenter.class)));
-    presenterService.presenters.put("3", new PresenterServiceImpl.PresenterNode(mock(Presenter.class)));
+    presenterService.presenters.put(101, new PresenterServiceImpl.PresenterNode(101, mock(Presenter.class)));
+    presenterService.presenters.put(102, new PresenterServiceImpl.PresenterNode(102, mock(Presenter.class)));
+    presenterService.presenters.put(103, new PresenterServiceImpl.PresenterNode(103, mock(Presenter.class)));
 
     //don't create the presenter again, should be the same presenter
     presenterService.takeView(view2, bundle);
 
-    Assert.assertTrue(presenterService.presenters.containsKey("1"));
-    Assert.assertTrue(presenterService.presenters.containsKey("2"));
-    Assert.assertTrue(presenterService.presenters.containsKey("3"));
+    Assert.assertTrue(presenterService.presenters.containsKey(101));
+    Assert.assertTrue(presenterService.presenters.containsKey(102));
+    Assert.assertTrue(presenterService.presenters.containsKey(103));
+  }
+
+  @Test
+  public void testDropView_retainPastLimit_leastRecentlyRetainedDestroyed() {
+    presenterService = new PresenterServiceImpl(presenterFactory, new RetainedPresenterCache(1, RetainedPresenterCache.NO_TTL));
+    MVPView view = mock(MVPView.class);
+    Presenter presenter = mock(Presenter.class);
+    Presenter presenter2 = mock(Presenter.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter).thenReturn(presenter2);
+
+    presenterService.takeView(view, null);
+    long id = presenterService.currentParentId;
+    presenterService.takeView(view, null);
+    long id2 = presenterService.currentParentId;
+
+    presenterService.dropView(id, true);
+    presenterService.dropView(id2, true);
+
+    verify(presenter).destroy();
+    verify(presenter2, never()).destroy();
+    Assert.assertFalse(presenterService.presenters.containsKey(id));
+    Assert.assertEquals(1, presenterService.getRetainedPresenterStats().getEvictedForSize());
+  }
+
+  @Test
+  public void testEvictExpiredPresenters_retainedPastTtl_destroyedWithChildren() {
+    ManualClock clock = new ManualClock();
+    presenterService = new PresenterServiceImpl(presenterFactory, new RetainedPresenterCache(RetainedPresenterCache.NO_LIMIT, 1000, clock));
+    MVPView view = mock(MVPView.class);
+    Presenter presenter = mock(Presenter.class);
+    Presenter child = mock(Presenter.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter).thenReturn(child);
+
+    presenterService.takeView(view, null);
+    presenterService.takeChild(view);
+    presenterService.dropView(presenterService.currentParentId, true);
+
+    clock.now = 999;
+    presenterService.evictExpiredPresenters();
+    verify(presenter, never()).destroy();
+
+    clock.now = 1000;
+    presenterService.evictExpiredPresenters();
+    verify(presenter).destroy();
+    verify(child).destroy();
+    Assert.assertEquals(presenterService.presenters.size(), 0);
+  }
+
+  @Test
+  public void testOnTrimMemory_complete_onlyDetachedPresentersDestroyed() {
+    MVPView view = mock(MVPView.class);
+    Presenter detached = mock(Presenter.class);
+    Presenter attached = mock(Presenter.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(detached).thenReturn(attached);
+
+    presenterService.takeView(view, null);
+    presenterService.dropView(presenterService.currentParentId, true);
+    presenterService.takeView(view, null);
+
+    presenterService.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+
+    verify(detached).destroy();
+    verify(attached, never()).destroy();
+    Assert.assertEquals(1, presenterService.getRetainedPresenterStats().getEvictedForMemory());
+  }
+
+  @Test
+  public void testTakeView_retainedPresenterEvicted_CreateNewPresenter() {
+    MVPView view = mock(MVPView.class);
+    Presenter presenter = mock(Presenter.class);
+    Presenter presenter2 = mock(Presenter.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter).thenReturn(presenter2);
+
+    presenterService.takeView(view, null);
+    long id = presenterService.currentParentId;
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(id);
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_EPOCH_KEY)).thenReturn(presenterService.epoch);
+    when(bundle.containsKey(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(true);
+    presenterService.dropView(id, true);
+    presenterService.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+
+    presenterService.takeView(view, bundle);
+
+    Assert.assertEquals(presenterService.getCurrentParent(), presenter2);
+  }
+
+  @Test
+  public void testTakeView_retainedPresenterReclaimed_leavesCache() {
+    MVPView view = mock(MVPView.class);
+    Presenter presenter = mock(Presenter.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter);
+
+    presenterService.takeView(view, null);
+    long id = presenterService.currentParentId;
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(id);
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_EPOCH_KEY)).thenReturn(presenterService.epoch);
+    when(bundle.containsKey(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(true);
+    presenterService.dropView(id, true);
+
+    presenterService.takeView(view, bundle);
+    presenterService.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+
+    verify(presenter, never()).destroy();
+    RetainedPresenterCache.Stats stats = presenterService.getRetainedPresenterStats();
+    Assert.assertEquals(1, stats.getReclaimed());
+    Assert.assertEquals(0, stats.getRetained());
+  }
+
+  @Test
+  public void testTakeChild_lazy_presenterNotCreated() {
+    presenterService.setLazyBinding(true);
+    MVPView view = mock(MVPView.class);
+
+    presenterService.takeChild(view);
+
+    verify(presenterFactory, never()).createPresenter(any(MVPView.class));
+    verify(view).setLifecycleListener(any(PresenterLifecycleListener.class));
+  }
+
+  @Test
+  public void testOnPresenterViewReady_lazy_presenterCreatedAndTakesView() {
+    presenterService.setLazyBinding(true);
+    MVPView view = mock(MVPView.class);
+    Presenter presenter = mock(Presenter.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter);
+
+    presenterService.takeView(view, null);
+    presenterService.onPresenterViewReady(presenterService.currentParentId);
+    presenterService.onPresenterViewResumed(presenterService.currentParentId);
+
+    verify(presenterFactory).createPresenter(view);
+    verify(presenter).takeView(view);
+    verify(presenter).onViewReady();
+    verify(presenter).onResume();
+  }
+
+  @Test
+  public void testLeakDetector_destroyedPresenterStillHeld_reported() {
+    PresenterLeakDetector.Listener listener = mock(PresenterLeakDetector.Listener.class);
+    PresenterLeakDetector detector = new PresenterLeakDetector(listener, 0, new ManualClock());
+    presenterService.setLeakDetector(detector);
+    MVPView view = mock(MVPView.class);
+    Presenter presenter = mock(Presenter.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter);
+    when(presenter.getView()).thenReturn(view);
+
+    presenterService.takeView(view, null);
+    presenterService.dropView(presenterService.currentParentId, false);
+    List<PresenterLeakDetector.Leak> leaks = detector.check(false);
+
+    Assert.assertEquals(2, leaks.size());
+    Assert.assertEquals(PresenterLeakDetector.Kind.DROPPED_VIEW, kindOf(leaks, view));
+    Assert.assertEquals(PresenterLeakDetector.Kind.DESTROYED_PRESENTER, kindOf(leaks, presenter));
+    verify(listener, times(2)).onLeak(any(PresenterLeakDetector.Leak.class));
+  }
+
+  private static PresenterLeakDetector.Kind kindOf(List<PresenterLeakDetector.Leak> leaks, Object leaked) {
+    for (PresenterLeakDetector.Leak leak : leaks) {
+      if (leak.getLeakedClassName().equals(leaked.getClass().getName())) {
+        return leak.getKind();
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void testDropView_retainPastByteBudget_leastRecentlyRetainedDestroyed() {
+    presenterService = new PresenterServiceImpl(presenterFactory,
+        new RetainedPresenterCache(RetainedPresenterCache.NO_LIMIT, RetainedPresenterCache.NO_TTL, 1000, new PresenterSizeEstimator()));
+    MVPView view = mock(MVPView.class);
+    Presenter presenter = sizedPresenter(600);
+    Presenter presenter2 = sizedPresenter(600);
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter).thenReturn(presenter2);
+
+    presenterService.takeView(view, null);
+    long id = presenterService.currentParentId;
+    presenterService.takeView(view, null);
+    long id2 = presenterService.currentParentId;
+
+    presenterService.dropView(id, true);
+    Assert.assertEquals(600, presenterService.getRetainedPresenterStats().getRetainedBytes());
+    presenterService.dropView(id2, true);
+
+    verify(presenter).destroy();
+    verify(presenter2, never()).destroy();
+    Assert.assertEquals(600, presenterService.getRetainedPresenterStats().getRetainedBytes());
+    Assert.assertEquals(1, presenterService.getRetainedPresenterStats().getEvictedForBytes());
+  }
+
+  @Test
+  public void testGetMemoryStats_attachedAndDetachedSplit() {
+    MVPView view = mock(MVPView.class);
+    MVPView view2 = mock(MVPView.class);
+    Presenter presenter = sizedPresenter(100);
+    Presenter presenter2 = sizedPresenter(30);
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter);
+    when(presenterFactory.createPresenter(view2)).thenReturn(presenter2);
+
+    presenterService.takeView(view, null);
+    presenterService.takeView(view2, null);
+    presenterService.dropView(presenterService.currentParentId, true);
+    PresenterMemoryStats stats = presenterService.getMemoryStats(new PresenterSizeEstimator());
+
+    Assert.assertEquals(1, stats.getAttached());
+    Assert.assertEquals(100, stats.getAttachedBytes());
+    Assert.assertEquals(1, stats.getDetached());
+    Assert.assertEquals(30, stats.getDetachedBytes());
+    Assert.assertEquals(Long.valueOf(130), stats.getBytesByClass().get(presenter.getClass()));
+  }
+
+  private static Presenter sizedPresenter(long bytes) {
+    Presenter presenter = mock(Presenter.class, withSettings().extraInterfaces(SizedPresenter.class));
+    when(((SizedPresenter) presenter).getRetainedBytes()).thenReturn(bytes);
+    return presenter;
+  }
+
+  @Test
+  public void testDropView_lazyNeverShown_nothingCreated() {
+    presenterService.setLazyBinding(true);
+    MVPView view = mock(MVPView.class);
+    MVPView childView = mock(MVPView.class);
+
+    presenterService.takeView(view, null);
+    presenterService.takeChild(childView);
+    presenterService.onPresenterViewPaused(presenterService.currentParentId);
+    presenterService.dropView(presenterService.currentParentId, false);
+
+    verify(presenterFactory, never()).createPresenter(any(MVPView.class));
+    verify(childView).setLifecycleListener(null);
+    Assert.assertEquals(presenterService.presenters.size(), 0);
+  }
+
+  @Test
+  public void testGetCurrentParent_lazy_presenterCreated() {
+    presenterService.setLazyBinding(true);
+    MVPView view = mock(MVPView.class);
+    Presenter presenter = mock(Presenter.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter);
+
+    presenterService.takeView(view, null);
+
+    Assert.assertEquals(presenterService.getCurrentParent(), presenter);
+  }
+
+  @Test
+  public void testDropView_destroyExecutor_viewsDroppedNowPresentersDestroyedLater() {
+    QueueExecutor executor = new QueueExecutor();
+    presenterService.setDestroyExecutor(executor);
+    MVPView view = mock(MVPView.class);
+    MVPView childView = mock(MVPView.class);
+    Presenter presenter = mock(Presenter.class);
+    when(presenter.getView()).thenReturn(view);
+    Presenter child = mock(Presenter.class);
+    when(child.getView()).thenReturn(childView);
+    when(presenterFactory.createPresenter(any(MVPView.class))).thenReturn(presenter).thenReturn(child);
+
+    presenterService.takeView(view, null);
+    presenterService.takeChild(childView);
+    presenterService.dropView(presenterService.currentParentId, false);
+
+    verify(presenter).dropView();
+    verify(child).dropView();
+    verify(childView).setLifecycleListener(null);
+    verify(presenter, never()).destroy();
+    verify(child, never()).destroy();
+    //parent and children go as one batch
+    Assert.assertEquals(1, executor.tasks.size());
+
+    executor.runAll();
+
+    verify(presenter).destroy();
+    verify(child).destroy();
+  }
+
+  @Test
+  public void testAwaitPendingDestroys_backgroundExecutor_presentersDestroyed() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    presenterService.setDestroyExecutor(executor);
+    MVPView view = mock(MVPView.class);
+    Presenter presenter = mock(Presenter.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter);
+
+    presenterService.takeView(view, null);
+    presenterService.dropView(presenterService.currentParentId, false);
+
+    Assert.assertTrue(presenterService.awaitPendingDestroys(5, TimeUnit.SECONDS));
+    verify(presenter).destroy();
+    executor.shutdown();
+  }
+
+  @Test
+  public void testAwaitPendingDestroys_nothingPending_returnsImmediately() throws InterruptedException {
+    Assert.assertTrue(presenterService.awaitPendingDestroys(0, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testTimingSink_everyCallRecordedPerPresenterClass() {
+    PresenterLatencyHistograms histograms = new PresenterLatencyHistograms();
+    presenterService.setTimingSink(histograms);
+    MVPView view = mock(MVPView.class);
+    Presenter presenter = mock(Presenter.class);
+    when(presenter.getView()).thenReturn(view);
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter);
+
+    presenterService.takeView(view, null);
+    long id = presenterService.currentParentId;
+    presenterService.onPresenterViewReady(id);
+    presenterService.onPresenterViewResumed(id);
+    presenterService.onPresenterViewResumed(id);
+    presenterService.onPresenterViewPaused(id);
+    presenterService.dropView(id, false);
+
+    Class<? extends Presenter> presenterClass = presenter.getClass();
+    Assert.assertEquals(1, histograms.getHistogram(presenterClass, PresenterCallback.CREATE).getCount());
+    Assert.assertEquals(1, histograms.getHistogram(presenterClass, PresenterCallback.TAKE_VIEW).getCount());
+    Assert.assertEquals(1, histograms.getHistogram(presenterClass, PresenterCallback.VIEW_READY).getCount());
+    Assert.assertEquals(2, histograms.getHistogram(presenterClass, PresenterCallback.RESUME).getCount());
+    Assert.assertEquals(1, histograms.getHistogram(presenterClass, PresenterCallback.PAUSE).getCount());
+    Assert.assertEquals(1, histograms.getHistogram(presenterClass, PresenterCallback.DROP_VIEW).getCount());
+    Assert.assertEquals(1, histograms.getHistogram(presenterClass, PresenterCallback.DESTROY).getCount());
+  }
+
+  @Test
+  public void testTakeView_rebind_sameLifecycleListener() {
+    MVPView view = mock(MVPView.class);
+    MVPView rotatedView = mock(MVPView.class);
+    Presenter presenter = mock(Presenter.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter);
+
+    presenterService.takeView(view, null);
+    long id = presenterService.currentParentId;
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(id);
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_EPOCH_KEY)).thenReturn(presenterService.epoch);
+    when(bundle.containsKey(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(true);
+    presenterService.dropView(id, true);
+    presenterService.takeView(rotatedView, bundle);
+
+    ArgumentCaptor<PresenterLifecycleListener> first = ArgumentCaptor.forClass(PresenterLifecycleListener.class);
+    ArgumentCaptor<PresenterLifecycleListener> second = ArgumentCaptor.forClass(PresenterLifecycleListener.class);
+    verify(view).setLifecycleListener(first.capture());
+    verify(rotatedView).setLifecycleListener(second.capture());
+    Assert.assertSame(first.getValue(), second.getValue());
+  }
+
+  @Test
+  public void testTakeChild_parentView_nestedChildAddedToParentView() {
+    MVPView activity = mock(MVPView.class);
+    MVPView fragment = mock(MVPView.class);
+    MVPView nested = mock(MVPView.class);
+    when(presenterFactory.createPresenter(any(MVPView.class))).thenReturn(mock(Presenter.class));
+
+    presenterService.takeView(activity, null);
+    presenterService.takeChild(fragment);
+    presenterService.takeChild(nested, fragment);
+
+    PresenterServiceImpl.PresenterNode root = presenterService.presenters.get(presenterService.currentParentId);
+    Assert.assertEquals(1, root.getChildren().size());
+    PresenterServiceImpl.PresenterNode fragmentNode = root.getChildren().get(0);
+    Assert.assertEquals(1, fragmentNode.getChildren().size());
+    Assert.assertEquals(fragmentNode.getId(), fragmentNode.getChildren().get(0).getParentId());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testTakeChild_parentViewNotBound_exception() {
+    presenterService.takeChild(mock(MVPView.class), mock(MVPView.class));
+  }
+
+  @Test
+  public void testDropView_doNotRetain_nestedChildDestroyedWithItsParentOnly() {
+    MVPView activity = mock(MVPView.class);
+    MVPView fragment = mock(MVPView.class);
+    MVPView otherFragment = mock(MVPView.class);
+    MVPView nested = mock(MVPView.class);
+    Presenter fragmentPresenter = mock(Presenter.class);
+    Presenter otherPresenter = mock(Presenter.class);
+    Presenter nestedPresenter = mock(Presenter.class);
+    when(presenterFactory.createPresenter(activity)).thenReturn(mock(Presenter.class));
+    when(presenterFactory.createPresenter(fragment)).thenReturn(fragmentPresenter);
+    when(presenterFactory.createPresenter(otherFragment)).thenReturn(otherPresenter);
+    when(presenterFactory.createPresenter(nested)).thenReturn(nestedPresenter);
+
+    presenterService.takeView(activity, null);
+    presenterService.takeChild(fragment);
+    presenterService.takeChild(otherFragment);
+    presenterService.takeChild(nested, fragment);
+    long fragmentId = presenterService.presenters.get(presenterService.currentParentId).getChildren().get(0).getId();
+
+    presenterService.dropView(fragmentId, false);
+
+    InOrder inOrder = inOrder(nestedPresenter, fragmentPresenter);
+    inOrder.verify(nestedPresenter).destroy();
+    inOrder.verify(fragmentPresenter).destroy();
+    verify(otherPresenter, never()).destroy();
+    Assert.assertEquals(2, presenterService.presenters.size());
+  }
+
+  @Test
+  public void testDropView_doNotRetain_wholeHierarchyDestroyedDeepestFirst() {
+    MVPView activity = mock(MVPView.class);
+    MVPView fragment = mock(MVPView.class);
+    MVPView nested = mock(MVPView.class);
+    MVPView deepest = mock(MVPView.class);
+    Presenter activityPresenter = mock(Presenter.class);
+    Presenter fragmentPresenter = mock(Presenter.class);
+    Presenter nestedPresenter = mock(Presenter.class);
+    Presenter deepestPresenter = mock(Presenter.class);
+    when(presenterFactory.createPresenter(activity)).thenReturn(activityPresenter);
+    when(presenterFactory.createPresenter(fragment)).thenReturn(fragmentPresenter);
+    when(presenterFactory.createPresenter(nested)).thenReturn(nestedPresenter);
+    when(presenterFactory.createPresenter(deepest)).thenReturn(deepestPresenter);
+
+    presenterService.takeView(activity, null);
+    presenterService.takeChild(fragment);
+    presenterService.takeChild(nested, fragment);
+    presenterService.takeChild(deepest, nested);
+
+    presenterService.dropView(presenterService.currentParentId, false);
+
+    InOrder inOrder = inOrder(deepestPresenter, nestedPresenter, fragmentPresenter, activityPresenter);
+    inOrder.verify(deepestPresenter).destroy();
+    inOrder.verify(nestedPresenter).destroy();
+    inOrder.verify(fragmentPresenter).destroy();
+    inOrder.verify(activityPresenter).destroy();
+    Assert.assertEquals(0, presenterService.presenters.size());
+  }
+
+  @Test
+  public void testDispatchToSubtree_resumeParentsFirstPauseChildrenFirst() {
+    MVPView fragment = mock(MVPView.class);
+    MVPView nested = mock(MVPView.class);
+    Presenter fragmentPresenter = mock(Presenter.class);
+    Presenter nestedPresenter = mock(Presenter.class);
+    Presenter activityPresenter = mock(Presenter.class);
+    when(presenterFactory.createPresenter(any(MVPView.class))).thenReturn(activityPresenter);
+    when(presenterFactory.createPresenter(fragment)).thenReturn(fragmentPresenter);
+    when(presenterFactory.createPresenter(nested)).thenReturn(nestedPresenter);
+
+    presenterService.takeView(mock(MVPView.class), null);
+    presenterService.takeChild(fragment);
+    presenterService.takeChild(nested, fragment);
+
+    presenterService.dispatchToSubtree(fragment, PresenterCallback.RESUME);
+    presenterService.dispatchToSubtree(fragment, PresenterCallback.PAUSE);
+
+    InOrder inOrder = inOrder(fragmentPresenter, nestedPresenter);
+    inOrder.verify(fragmentPresenter).onResume();
+    inOrder.verify(nestedPresenter).onResume();
+    inOrder.verify(nestedPresenter).onPause();
+    inOrder.verify(fragmentPresenter).onPause();
+    verify(activityPresenter, never()).onResume();
+  }
+
+  @Test
+  public void testDispatchToSubtree_detachedChildSkipped() {
+    MVPView fragment = mock(MVPView.class);
+    MVPView nested = mock(MVPView.class);
+    Presenter nestedPresenter = mock(Presenter.class);
+    when(presenterFactory.createPresenter(any(MVPView.class))).thenReturn(mock(Presenter.class));
+    when(presenterFactory.createPresenter(nested)).thenReturn(nestedPresenter);
+
+    presenterService.takeView(fragment, null);
+    presenterService.takeChild(nested, fragment);
+    long nestedId = presenterService.presenters.get(presenterService.currentParentId).getChildren().get(0).getId();
+    presenterService.dropView(nestedId, true);
+
+    presenterService.dispatchToSubtree(fragment, PresenterCallback.RESUME);
+
+    verify(nestedPresenter, never()).onResume();
+  }
+
+  @Test
+  public void testSavePresenter_retainedState_restoredAfterProcessDeath() {
+    MVPView view = mock(MVPView.class);
+    CountingPresenter presenter = new CountingPresenter();
+    CountingPresenter restored = new CountingPresenter();
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter).thenReturn(restored);
+    presenterService.takeView(view, null);
+    presenter.count = 42;
+
+    presenterService.savePresenter(presenterService.currentParentId, bundle);
+    ArgumentCaptor<byte[]> snapshot = ArgumentCaptor.forClass(byte[].class);
+    verify(bundle).putByteArray(any(String.class), snapshot.capture());
+    when(bundle.getByteArray(PresenterServiceImpl.PRESENTER_STATE_KEY)).thenReturn(snapshot.getValue());
+    new PresenterServiceImpl(presenterFactory).takeView(view, bundle);
+
+    Assert.assertEquals(42, restored.countOnTakeView);
+  }
+
+  @Test
+  public void testTakeView_lazyRetainedState_restoredWhenCreated() {
+    MVPView view = mock(MVPView.class);
+    CountingPresenter presenter = new CountingPresenter();
+    presenter.count = 7;
+    CountingPresenter restored = new CountingPresenter();
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter).thenReturn(restored);
+    presenterService.takeView(view, null);
+    presenterService.savePresenter(presenterService.currentParentId, bundle);
+    ArgumentCaptor<byte[]> snapshot = ArgumentCaptor.forClass(byte[].class);
+    verify(bundle).putByteArray(any(String.class), snapshot.capture());
+    when(bundle.getByteArray(PresenterServiceImpl.PRESENTER_STATE_KEY)).thenReturn(snapshot.getValue());
+
+    PresenterServiceImpl lazyService = new PresenterServiceImpl(presenterFactory);
+    lazyService.setLazyBinding(true);
+    lazyService.takeView(view, bundle);
+    Assert.assertEquals(0, restored.count);
+    lazyService.onPresenterViewResumed(lazyService.currentParentId);
+
+    Assert.assertEquals(7, restored.countOnTakeView);
+  }
+
+  @Test
+  public void testTakeView_unreadableSnapshot_presenterStartsFresh() {
+    MVPView view = mock(MVPView.class);
+    CountingPresenter presenter = new CountingPresenter();
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter);
+    when(bundle.getByteArray(PresenterServiceImpl.PRESENTER_STATE_KEY)).thenReturn(new byte[] {0, 3, 'f'});
+
+    presenterService.takeView(view, bundle);
+
+    Assert.assertEquals(0, presenter.countOnTakeView);
+    verify(view).setLifecycleListener(any(PresenterLifecycleListener.class));
+  }
+
+  @Test
+  public void testSavePresenter_noRetainedState_noSnapshot() {
+    MVPView view = mock(MVPView.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(mock(Presenter.class));
+    presenterService.takeView(view, null);
+
+    presenterService.savePresenter(presenterService.currentParentId, bundle);
+
+    verify(bundle, never()).putByteArray(any(String.class), any(byte[].class));
+  }
+
+  @Test
+  public void testSavePresenter_snapshotSizeAndTimingsRecorded() {
+    MVPView view = mock(MVPView.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(new CountingPresenter()).thenReturn(new CountingPresenter());
+    PresenterSnapshotSizes sizes = new PresenterSnapshotSizes();
+    PresenterLatencyHistograms histograms = new PresenterLatencyHistograms();
+    presenterService.setSnapshotSink(sizes);
+    presenterService.setTimingSink(histograms);
+    presenterService.takeView(view, null);
+
+    presenterService.savePresenter(presenterService.currentParentId, bundle);
+    ArgumentCaptor<byte[]> snapshot = ArgumentCaptor.forClass(byte[].class);
+    verify(bundle).putByteArray(any(String.class), snapshot.capture());
+    when(bundle.getByteArray(PresenterServiceImpl.PRESENTER_STATE_KEY)).thenReturn(snapshot.getValue());
+    PresenterServiceImpl restoredService = new PresenterServiceImpl(presenterFactory);
+    restoredService.setTimingSink(histograms);
+    restoredService.takeView(view, bundle);
+
+    PresenterSnapshotSizes.Sizes recorded = sizes.getSizes(CountingPresenter.class);
+    Assert.assertEquals(1, recorded.getCount());
+    Assert.assertEquals(snapshot.getValue().length, recorded.getMaxBytes());
+    Assert.assertEquals(1, histograms.getHistogram(CountingPresenter.class, PresenterCallback.SAVE_STATE).getCount());
+    Assert.assertEquals(1, histograms.getHistogram(CountingPresenter.class, PresenterCallback.RESTORE_STATE).getCount());
+  }
+
+  @Test
+  public void testSavePresenter_largeSnapshot_spilledToStoreAndRestored() throws IOException {
+    MVPView view = mock(MVPView.class);
+    CountingPresenter presenter = new CountingPresenter();
+    CountingPresenter restored = new CountingPresenter();
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter).thenReturn(restored);
+    PresenterStateStore store = new PresenterStateStore(new File(folder.getRoot(), "presenters"));
+    try {
+      presenterService.setStateStore(store, 0);
+      presenterService.takeView(view, null);
+      presenter.count = 42;
+
+      presenterService.savePresenter(presenterService.currentParentId, bundle);
+      ArgumentCaptor<Long> storedKey = ArgumentCaptor.forClass(Long.class);
+      verify(bundle, never()).putByteArray(any(String.class), any(byte[].class));
+      verify(bundle).putLong(eq(PresenterServiceImpl.PRESENTER_STORED_STATE_KEY), storedKey.capture());
+      when(bundle.getLong(PresenterServiceImpl.PRESENTER_STORED_STATE_KEY)).thenReturn(storedKey.getValue());
+      PresenterServiceImpl restoredService = new PresenterServiceImpl(presenterFactory);
+      restoredService.setStateStore(store, 0);
+      restoredService.takeView(view, bundle);
+
+      Assert.assertEquals(42, restored.countOnTakeView);
+      restoredService.dropView(restoredService.currentParentId, false);
+      Assert.assertFalse(store.contains(storedKey.getValue()));
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testSavePresenter_savedAgain_storedKeyReusedAndRemovedOnDestroy() throws IOException {
+    MVPView view = mock(MVPView.class);
+    when(presenterFactory.createPresenter(view)).thenReturn(new CountingPresenter());
+    PresenterStateStore store = new PresenterStateStore(new File(folder.getRoot(), "presenters"));
+    try {
+      presenterService.setStateStore(store, 0);
+      presenterService.takeView(view, null);
+
+      presenterService.savePresenter(presenterService.currentParentId, bundle);
+      presenterService.savePresenter(presenterService.currentParentId, bundle);
+      ArgumentCaptor<Long> storedKey = ArgumentCaptor.forClass(Long.class);
+      verify(bundle, times(2)).putLong(eq(PresenterServiceImpl.PRESENTER_STORED_STATE_KEY), storedKey.capture());
+      Assert.assertEquals(storedKey.getAllValues().get(0), storedKey.getAllValues().get(1));
+      Assert.assertEquals(1, store.size());
+
+      presenterService.dropView(presenterService.currentParentId, false);
+
+      Assert.assertEquals(0, store.size());
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testPrewarm_nextMatchingTakeView_getsPrewarmedPresenter() {
+    MVPView view = mock(MVPView.class);
+    PresenterTypeFactory typeFactory = mock(PresenterTypeFactory.class);
+    Presenter presenter = mock(Presenter.class, withSettings().extraInterfaces(Prewarmable.class));
+    when(typeFactory.createPresenterForType(view.getClass())).thenReturn(presenter);
+    presenterService = new PresenterServiceImpl(typeFactory);
+    QueueExecutor executor = new QueueExecutor();
+    presenterService.setPrewarmExecutor(executor, 1000);
+
+    presenterService.prewarm(view.getClass());
+    executor.runAll();
+    verify((Prewarmable) presenter).onPrewarm();
+    presenterService.takeView(view, null);
+
+    verify(typeFactory, never()).createPresenter(any(MVPView.class));
+    verify(presenter).takeView(view);
+    Assert.assertSame(presenter, presenterService.getCurrentParent());
+  }
+
+  @Test
+  public void testPrewarm_unclaimedPastTimeout_destroyed() {
+    MVPView view = mock(MVPView.class);
+    PresenterTypeFactory typeFactory = mock(PresenterTypeFactory.class);
+    Presenter presenter = mock(Presenter.class);
+    when(typeFactory.createPresenterForType(view.getClass())).thenReturn(presenter);
+    presenterService = new PresenterServiceImpl(typeFactory);
+    QueueExecutor executor = new QueueExecutor();
+    ManualClock clock = new ManualClock();
+    presenterService.setPrewarmExecutor(executor, 1000, clock);
+    presenterService.prewarm(view.getClass());
+    executor.runAll();
+
+    clock.now = 999;
+    presenterService.evictExpiredPresenters();
+    verify(presenter, never()).destroy();
+    clock.now = 1000;
+    presenterService.evictExpiredPresenters();
+
+    verify(presenter).destroy();
+  }
+
+  @Test
+  public void testPrewarm_unclaimed_destroyedOnPrewarmExecutorWhenExpiryFires() {
+    MVPView view = mock(MVPView.class);
+    PresenterTypeFactory typeFactory = mock(PresenterTypeFactory.class);
+    Presenter presenter = mock(Presenter.class);
+    when(typeFactory.createPresenterForType(view.getClass())).thenReturn(presenter);
+    presenterService = new PresenterServiceImpl(typeFactory);
+    QueueExecutor executor = new QueueExecutor();
+    ManualClock clock = new ManualClock();
+    ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    presenterService.setPrewarmExecutor(executor, 1000, clock, scheduler);
+    presenterService.prewarm(view.getClass());
+    executor.runAll();
+
+    ArgumentCaptor<Runnable> expiry = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler).schedule(expiry.capture(), eq(1000L), eq(TimeUnit.MILLISECONDS));
+    clock.now = 1000;
+    //nothing else happens, no view is taken and nothing is evicted by hand
+    expiry.getValue().run();
+    //not on the shared expiry thread
+    verify(presenter, never()).destroy();
+    executor.runAll();
+
+    verify(presenter).destroy();
+  }
+
+  @Test
+  public void testPrewarm_claimedBeforeReady_createdNormallyAndPrewarmedDestroyed() {
+    MVPView view = mock(MVPView.class);
+    PresenterTypeFactory typeFactory = mock(PresenterTypeFactory.class);
+    Presenter prewarmedPresenter = mock(Presenter.class);
+    Presenter presenter = mock(Presenter.class);
+    when(typeFactory.createPresenterForType(view.getClass())).thenReturn(prewarmedPresenter);
+    when(typeFactory.createPresenter(view)).thenReturn(presenter);
+    presenterService = new PresenterServiceImpl(typeFactory);
+    QueueExecutor executor = new QueueExecutor();
+    presenterService.setPrewarmExecutor(executor, 1000);
+
+    presenterService.prewarm(view.getClass());
+    presenterService.takeView(view, null);
+    executor.runAll();
+
+    Assert.assertSame(presenter, presenterService.getCurrentParent());
+    verify(prewarmedPresenter).destroy();
+  }
+
+  @Test
+  public void testPrewarm_otherViewType_notClaimed() {
+    MVPView view = mock(MVPView.class);
+    PresenterTypeFactory typeFactory = mock(PresenterTypeFactory.class);
+    Presenter prewarmedPresenter = mock(Presenter.class);
+    when(typeFactory.createPresenterForType(CountingView.class)).thenReturn(prewarmedPresenter);
+    when(typeFactory.createPresenter(view)).thenReturn(mock(Presenter.class));
+    presenterService = new PresenterServiceImpl(typeFactory);
+    QueueExecutor executor = new QueueExecutor();
+    presenterService.setPrewarmExecutor(executor, 1000);
+
+    presenterService.prewarm(CountingView.class);
+    executor.runAll();
+    presenterService.takeView(view, null);
+
+    verify(prewarmedPresenter, never()).takeView(any(MVPView.class));
+    presenterService.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+    verify(prewarmedPresenter).destroy();
+  }
+
+  @Test
+  public void testLifecycleMask_emptyCallbacksSkipped() {
+    MVPView view = mock(MVPView.class);
+    PresenterFactory maskedFactory = mock(PresenterFactory.class, withSettings().extraInterfaces(PresenterLifecycleMasks.class));
+    Presenter presenter = mock(Presenter.class);
+    when(maskedFactory.createPresenter(view)).thenReturn(presenter);
+    when(((PresenterLifecycleMasks) maskedFactory).getLifecycleMask(presenter.getClass())).thenReturn(LifecycleMask.RESUME);
+    presenterService = new PresenterServiceImpl(maskedFactory);
+
+    presenterService.takeView(view, null);
+    long id = presenterService.currentParentId;
+    presenterService.onPresenterViewReady(id);
+    presenterService.onPresenterViewResumed(id);
+    presenterService.onPresenterViewPaused(id);
+    presenterService.onPresenterViewResumed(id);
+
+    verify(presenter, never()).onViewReady();
+    verify(presenter, times(2)).onResume();
+    verify(presenter, never()).onPause();
+    //looked up once for the life of the node
+    verify((PresenterLifecycleMasks) maskedFactory).getLifecycleMask(presenter.getClass());
+  }
+
+  @Test
+  public void testLifecycleMask_unknownPresenter_everyCallback() {
+    MVPView view = mock(MVPView.class);
+    PresenterFactory maskedFactory = mock(PresenterFactory.class, withSettings().extraInterfaces(PresenterLifecycleMasks.class));
+    Presenter presenter = mock(Presenter.class);
+    when(maskedFactory.createPresenter(view)).thenReturn(presenter);
+    when(((PresenterLifecycleMasks) maskedFactory).getLifecycleMask(presenter.getClass())).thenReturn(LifecycleMask.UNKNOWN);
+    presenterService = new PresenterServiceImpl(maskedFactory);
+
+    presenterService.takeView(view, null);
+    long id = presenterService.currentParentId;
+    presenterService.onPresenterViewReady(id);
+    presenterService.onPresenterViewResumed(id);
+    presenterService.onPresenterViewPaused(id);
+
+    verify(presenter).onViewReady();
+    verify(presenter).onResume();
+    verify(presenter).onPause();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testPrewarm_noExecutor_exception() {
+    presenterService.prewarm(MVPView.class);
+  }
+
+  interface CountingView extends MVPView {
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testDropView_retain_scopedSubscriptionsKeepRunningUntilDestroyed() {
+    MVPView view = mock(MVPView.class);
+    CountingPresenter presenter = new CountingPresenter();
+    when(presenterFactory.createPresenter(view)).thenReturn(presenter);
+    PublishSubject<String> subject = PublishSubject.create();
+    Observer<String> observer = mock(Observer.class);
+    presenterService.takeView(view, null);
+    long id = presenterService.currentParentId;
+    presenter.subscribe(subject, observer);
+
+    presenterService.dropView(id, true);
+    subject.onNext("while rotating");
+    Assert.assertTrue(subject.hasObservers());
+    verify(observer, never()).onNext(any(String.class));
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(id);
+    when(bundle.getLong(PresenterServiceImpl.PRESENTER_EPOCH_KEY)).thenReturn(presenterService.epoch);
+    when(bundle.containsKey(PresenterServiceImpl.PRESENTER_ID_KEY)).thenReturn(true);
+    presenterService.takeView(mock(MVPView.class), bundle);
+    subject.onNext("rotated");
+    verify(observer).onNext("rotated");
+
+    presenterService.dropView(id, false);
+
+    Assert.assertFalse(subject.hasObservers());
+  }
+
+  static class CountingPresenter extends AbstractPresenter<MVPView> implements RetainedState {
+    int count;
+    int countOnTakeView;
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+      out.writeInt(count);
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+      count = in.readInt();
+    }
+
+    @Override
+    public void onTakeView() {
+      countOnTakeView = count;
+    }
+
+    @Override
+    public void onDropView() {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public void onResume() {
+    }
+
+    @Override
+    public void onPause() {
+    }
+
+    @Override
+    public void onViewReady() {
+    }
+  }
+
+  static class QueueExecutor implements Executor {
+    List<Runnable> tasks = new ArrayList<>();
+
+    @Override
+    public void execute(Runnable command) {
+      tasks.add(command);
+    }
+
+    void runAll() {
+      for (Runnable task : tasks) {
+        task.run();
+      }
+      tasks.clear();
+    }
+  }
+
+  static class ManualClock implements Clock {
+    long now;
+
+    @Override
+    public long uptimeMillis() {
+      return now;
+    }
   }
 }
@@ -0,0 +1,150 @@
+package mvp.presenter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mvp.MVPView;
+import rx.Observable;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class PresenterSizeEstimatorTest {
+
+  PresenterSizeEstimator estimator = new PresenterSizeEstimator();
+
+  @Test
+  public void testEstimate_sizedPresenter_reportedSizeUsed() {
+    Presenter presenter = mock(Presenter.class, withSettings().extraInterfaces(SizedPresenter.class));
+    when(((SizedPresenter) presenter).getRetainedBytes()).thenReturn(1234L);
+
+    Assert.assertEquals(1234, estimator.estimate(presenter));
+  }
+
+  @Test
+  public void testEstimate_heldArrayCounted() {
+    HoldingPresenter small = new HoldingPresenter();
+    HoldingPresenter large = new HoldingPresenter();
+    large.held = new byte[10000];
+
+    long difference = estimator.estimate(large) - estimator.estimate(small);
+
+    Assert.assertTrue(difference >= 10000 && difference < 10100);
+  }
+
+  @Test
+  public void testEstimate_viewAndOtherPresentersNotCounted() {
+    HoldingPresenter presenter = new HoldingPresenter();
+    long alone = estimator.estimate(presenter);
+    HoldingPresenter other = new HoldingPresenter();
+    other.held = new byte[10000];
+    presenter.heldView = new BigView();
+    presenter.held = other;
+
+    Assert.assertEquals(alone, estimator.estimate(presenter));
+  }
+
+  @Test
+  public void testEstimate_largeList_sampleCloseToFullWalk() {
+    HoldingPresenter presenter = new HoldingPresenter();
+    List<int[]> items = new ArrayList<>();
+    long itemBytes = 0;
+    for (int i = 0; i < 5000; i++) {
+      items.add(new int[i % 64]);
+      //array header and elements, 8 byte aligned
+      itemBytes += (16 + 4 * (i % 64) + 7) & ~7;
+    }
+    presenter.held = items;
+
+    long full = new PresenterSizeEstimator(100000, 100000).estimate(presenter);
+    long sampled = new PresenterSizeEstimator(100000, 32).estimate(presenter);
+
+    //the list's contents were reached, not just the list
+    Assert.assertTrue("full " + full + " items " + itemBytes, full >= itemBytes);
+    Assert.assertTrue("full " + full + " sampled " + sampled, Math.abs(sampled - full) < full / 5);
+  }
+
+  @Test
+  public void testEstimate_map_contentsCounted() {
+    HoldingPresenter small = new HoldingPresenter();
+    small.held = new HashMap<>();
+    HoldingPresenter large = new HoldingPresenter();
+    Map<Integer, byte[]> items = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      items.put(i, new byte[1000]);
+    }
+    large.held = items;
+
+    Assert.assertTrue(estimator.estimate(large) - estimator.estimate(small) >= 100 * 1000);
+  }
+
+  @Test
+  public void testEstimate_objectLimit_walkStops() {
+    HoldingPresenter presenter = new HoldingPresenter();
+    List<Object> items = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      items.add(new byte[100]);
+    }
+    presenter.held = items;
+
+    long limited = new PresenterSizeEstimator(10, 1000).estimate(presenter);
+
+    Assert.assertTrue(limited < new PresenterSizeEstimator(100000, 1000).estimate(presenter) / 10);
+  }
+
+  static class HoldingPresenter extends AbstractPresenter<MVPView> {
+    Object held;
+    MVPView heldView;
+
+    @Override
+    public void onDropView() {
+    }
+
+    @Override
+    public void onTakeView() {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public void onResume() {
+    }
+
+    @Override
+    public void onPause() {
+    }
+
+    @Override
+    public void onViewReady() {
+    }
+  }
+
+  static class BigView implements MVPView {
+    byte[] pixels = new byte[100000];
+
+    @Override
+    public <T> Observable.Transformer<T, T> getLifecycleBinder() {
+      return null;
+    }
+
+    @Override
+    public void showNoNetworkConnection() {
+    }
+
+    @Override
+    public void hideNoNetworkConnection() {
+    }
+
+    @Override
+    public void setLifecycleListener(PresenterLifecycleListener presenterLifecycleListener) {
+    }
+  }
+}
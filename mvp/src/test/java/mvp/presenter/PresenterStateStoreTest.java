@@ -0,0 +1,174 @@
+package mvp.presenter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+public class PresenterStateStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  File file;
+  PresenterStateStore store;
+
+  @Before
+  public void setup() throws IOException {
+    file = new File(folder.getRoot(), "presenters");
+    store = new PresenterStateStore(file);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+  }
+
+  @Test
+  public void testPut_isRead() throws IOException {
+    long key = store.put(PresenterStateStore.NO_KEY, bytes(100, 1));
+
+    Assert.assertArrayEquals(bytes(100, 1), read(store, key));
+  }
+
+  @Test
+  public void testOpen_unknownKey_null() throws IOException {
+    Assert.assertNull(store.open(1));
+  }
+
+  @Test
+  public void testPut_sameKey_supersedes() throws IOException {
+    long key = store.put(PresenterStateStore.NO_KEY, bytes(100, 1));
+    Assert.assertEquals(key, store.put(key, bytes(50, 2)));
+
+    Assert.assertArrayEquals(bytes(50, 2), read(store, key));
+    Assert.assertEquals(1, store.size());
+  }
+
+  @Test
+  public void testReopen_recordsIndexed() throws IOException {
+    long first = store.put(PresenterStateStore.NO_KEY, bytes(10, 1));
+    long second = store.put(PresenterStateStore.NO_KEY, bytes(20, 2));
+    store.put(first, bytes(30, 3));
+    store.remove(second);
+    store.close();
+
+    store = new PresenterStateStore(file);
+
+    Assert.assertArrayEquals(bytes(30, 3), read(store, first));
+    Assert.assertFalse(store.contains(second));
+  }
+
+  @Test
+  public void testReopen_tornRecord_dropped() throws IOException {
+    long key = store.put(PresenterStateStore.NO_KEY, bytes(10, 1));
+    long torn = store.put(PresenterStateStore.NO_KEY, bytes(100, 2));
+    long length = store.getFileBytes();
+    store.close();
+    RandomAccessFile raw = new RandomAccessFile(file, "rw");
+    raw.setLength(length - 40);
+    raw.close();
+
+    store = new PresenterStateStore(file);
+
+    Assert.assertArrayEquals(bytes(10, 1), read(store, key));
+    Assert.assertFalse(store.contains(torn));
+    Assert.assertNotEquals(torn, store.put(PresenterStateStore.NO_KEY, bytes(1, 1)));
+  }
+
+  @Test
+  public void testClear_keysNotReused() throws IOException {
+    long key = store.put(PresenterStateStore.NO_KEY, bytes(10, 1));
+    store.clear();
+    store.close();
+
+    store = new PresenterStateStore(file);
+
+    Assert.assertEquals(0, store.size());
+    Assert.assertTrue(store.put(PresenterStateStore.NO_KEY, bytes(10, 1)) > key);
+  }
+
+  @Test
+  public void testPut_mostlySuperseded_compacted() throws IOException {
+    long key = store.put(PresenterStateStore.NO_KEY, bytes(4096, 1));
+    long other = store.put(PresenterStateStore.NO_KEY, bytes(4096, 2));
+    for (int i = 0; i < 100; i++) {
+      store.put(key, bytes(4096, i));
+    }
+
+    Assert.assertTrue(store.getFileBytes() < 64 * 1024);
+    Assert.assertArrayEquals(bytes(4096, 99), read(store, key));
+    Assert.assertArrayEquals(bytes(4096, 2), read(store, other));
+  }
+
+  @Test
+  public void testCompact_survivesReopen() throws IOException {
+    long key = store.put(PresenterStateStore.NO_KEY, bytes(10, 1));
+    long removed = store.put(PresenterStateStore.NO_KEY, bytes(10, 2));
+    store.remove(removed);
+    store.compact();
+    store.close();
+
+    store = new PresenterStateStore(file);
+
+    Assert.assertArrayEquals(bytes(10, 1), read(store, key));
+    Assert.assertEquals(1, store.size());
+  }
+
+  @Test
+  public void testCompact_failed_storeCarriesOnWithOldFile() throws IOException {
+    long key = store.put(PresenterStateStore.NO_KEY, bytes(10, 1));
+    //the compacted copy can't be written where a directory is in the way
+    Assert.assertTrue(new File(file.getPath() + ".compact").mkdir());
+
+    try {
+      store.compact();
+      Assert.fail();
+    } catch (IOException expected) {
+    }
+    for (int i = 0; i < 100; i++) {
+      store.put(key, bytes(4096, i));
+    }
+
+    Assert.assertArrayEquals(bytes(4096, 99), read(store, key));
+    Assert.assertEquals(1, store.size());
+  }
+
+  @Test
+  public void testOpen_streamOutlivesLaterWrites() throws IOException {
+    long key = store.put(PresenterStateStore.NO_KEY, bytes(10, 1));
+    InputStream in = store.open(key);
+    store.put(PresenterStateStore.NO_KEY, bytes(1000, 2));
+
+    Assert.assertArrayEquals(bytes(10, 1), readFully(in));
+  }
+
+  private static byte[] bytes(int size, int value) {
+    byte[] bytes = new byte[size];
+    Arrays.fill(bytes, (byte) value);
+    return bytes;
+  }
+
+  private static byte[] read(PresenterStateStore store, long key) throws IOException {
+    return readFully(store.open(key));
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[256];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+}
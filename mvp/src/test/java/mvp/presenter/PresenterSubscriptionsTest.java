@@ -0,0 +1,297 @@
+package mvp.presenter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mvp.MVPView;
+import rx.Observer;
+import rx.Subscription;
+import rx.subjects.PublishSubject;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class PresenterSubscriptionsTest {
+
+  PresenterSubscriptions subscriptions;
+  PublishSubject<String> subject;
+  Observer<String> observer;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    subscriptions = new PresenterSubscriptions();
+    subject = PublishSubject.create();
+    observer = mock(Observer.class);
+  }
+
+  @Test
+  public void testSubscribe_attached_delivered() {
+    subscriptions.attach();
+    subscriptions.subscribe(subject, observer);
+
+    subject.onNext("a");
+
+    verify(observer).onNext("a");
+  }
+
+  @Test
+  public void testDetach_upstreamKeptItemsNotDelivered() {
+    subscriptions.attach();
+    subscriptions.subscribe(subject, observer);
+
+    subscriptions.detach();
+    subject.onNext("a");
+
+    verify(observer, never()).onNext(any(String.class));
+    Assert.assertTrue(subject.hasObservers());
+  }
+
+  @Test
+  public void testAttach_afterDetach_deliveredAgain() {
+    subscriptions.subscribe(subject, observer);
+    subscriptions.attach();
+
+    subject.onNext("a");
+
+    verify(observer).onNext("a");
+  }
+
+  @Test
+  public void testCompletedWhileDetached_deliveredOnAttach() {
+    subscriptions.subscribe(subject, observer);
+    subject.onCompleted();
+    verify(observer, never()).onCompleted();
+
+    subscriptions.attach();
+
+    verify(observer).onCompleted();
+    Assert.assertEquals(0, subscriptions.size());
+  }
+
+  @Test
+  public void testErrorWhileDetached_deliveredOnAttach() {
+    RuntimeException error = new RuntimeException();
+    subscriptions.subscribe(subject, observer);
+    subject.onError(error);
+
+    subscriptions.attach();
+
+    verify(observer).onError(error);
+  }
+
+  @Test
+  public void testUnsubscribe_everythingUnsubscribed() {
+    PublishSubject<String> other = PublishSubject.create();
+    subscriptions.subscribe(subject, observer);
+    subscriptions.subscribe(other, observer);
+
+    subscriptions.unsubscribe();
+
+    Assert.assertFalse(subject.hasObservers());
+    Assert.assertFalse(other.hasObservers());
+    Assert.assertTrue(subscriptions.isUnsubscribed());
+  }
+
+  @Test
+  public void testSubscribe_afterUnsubscribe_unsubscribedStraightAway() {
+    subscriptions.unsubscribe();
+
+    Subscription subscription = subscriptions.subscribe(subject, observer);
+
+    Assert.assertTrue(subscription.isUnsubscribed());
+    Assert.assertFalse(subject.hasObservers());
+  }
+
+  @Test
+  public void testSubscription_unsubscribed_forgotten() {
+    Subscription subscription = subscriptions.subscribe(subject, observer);
+
+    subscription.unsubscribe();
+
+    Assert.assertEquals(0, subscriptions.size());
+    Assert.assertFalse(subject.hasObservers());
+  }
+
+  @Test
+  public void testKeyed_itemsWhileDetached_replayedOnAttach() {
+    subscriptions.subscribe("items", 2, subject, observer);
+
+    subject.onNext("a");
+    subject.onNext("b");
+    subject.onNext("c");
+    subscriptions.attach();
+
+    InOrder inOrder = inOrder(observer);
+    inOrder.verify(observer).onNext("b");
+    inOrder.verify(observer).onNext("c");
+    verify(observer, never()).onNext("a");
+  }
+
+  @Test
+  public void testKeyed_completed_replayedToEveryNewView() {
+    subscriptions.attach();
+    subscriptions.subscribe("items", 1, subject, observer);
+    subject.onNext("a");
+    subject.onCompleted();
+
+    subscriptions.detach();
+    subscriptions.attach();
+
+    verify(observer, times(2)).onNext("a");
+    verify(observer, times(1)).onCompleted();
+  }
+
+  @Test
+  public void testKeyed_resubscribed_carriesOnFromEarlierItems() {
+    PublishSubject<String> refreshed = PublishSubject.create();
+    subscriptions.subscribe("items", 2, subject, observer);
+    subject.onNext("a");
+
+    subscriptions.subscribe("items", 2, refreshed, observer);
+    subject.onNext("stale");
+    refreshed.onNext("b");
+    subscriptions.attach();
+
+    Assert.assertFalse(subject.hasObservers());
+    InOrder inOrder = inOrder(observer);
+    inOrder.verify(observer).onNext("a");
+    inOrder.verify(observer).onNext("b");
+    verify(observer, never()).onNext("stale");
+    Assert.assertEquals(2, subscriptions.getReplayItems());
+  }
+
+  @Test
+  public void testKeyed_nullItem_deliveredAndReplayed() {
+    subscriptions.attach();
+    subscriptions.subscribe("items", 2, subject, observer);
+
+    subject.onNext(null);
+    subject.onNext("a");
+    subscriptions.detach();
+    subscriptions.attach();
+
+    verify(observer, times(2)).onNext(null);
+    verify(observer, times(2)).onNext("a");
+    verify(observer, never()).onError(any(Throwable.class));
+    Assert.assertTrue(subject.hasObservers());
+  }
+
+  @Test
+  public void testKeyed_resubscribedAtReplayBudget_itemsCarriedOver() {
+    PublishSubject<String> refreshed = PublishSubject.create();
+    subscriptions.setReplayBudget(3);
+    subscriptions.subscribe("items", 3, subject, observer);
+    subject.onNext("a");
+    subject.onNext("b");
+    subject.onNext("c");
+
+    subscriptions.subscribe("items", 3, refreshed, observer);
+    subscriptions.attach();
+
+    Assert.assertEquals(3, subscriptions.getReplayItems());
+    InOrder inOrder = inOrder(observer);
+    inOrder.verify(observer).onNext("a");
+    inOrder.verify(observer).onNext("b");
+    inOrder.verify(observer).onNext("c");
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testReplayBudget_leastRecentlyUpdatedLosesOldestFirst() {
+    PublishSubject<String> other = PublishSubject.create();
+    Observer<String> otherObserver = mock(Observer.class);
+    subscriptions.setReplayBudget(3);
+    subscriptions.subscribe("first", 3, subject, observer);
+    subscriptions.subscribe("second", 3, other, otherObserver);
+    subject.onNext("a");
+    subject.onNext("b");
+    other.onNext("x");
+    other.onNext("y");
+
+    subscriptions.attach();
+
+    Assert.assertEquals(3, subscriptions.getReplayItems());
+    verify(observer, never()).onNext("a");
+    verify(observer).onNext("b");
+    verify(otherObserver).onNext("x");
+    verify(otherObserver).onNext("y");
+  }
+
+  @Test
+  public void testUnsubscribe_replayCleared() {
+    subscriptions.subscribe("items", 2, subject, observer);
+    subject.onNext("a");
+
+    subscriptions.unsubscribe();
+    subscriptions.attach();
+
+    verify(observer, never()).onNext(any(String.class));
+    Assert.assertEquals(0, subscriptions.getReplayItems());
+  }
+
+  @Test
+  public void testAbstractPresenter_takeViewDirectly_itemsDeliveredBeforeOnTakeView() {
+    final List<String> order = new ArrayList<>();
+    AbstractPresenter<MVPView> presenter = new AbstractPresenter<MVPView>() {
+      @Override
+      public void onDropView() {
+        order.add("onDropView");
+      }
+
+      @Override
+      public void onTakeView() {
+        order.add("onTakeView");
+      }
+
+      @Override
+      public void destroy() {
+      }
+
+      @Override
+      public void onResume() {
+      }
+
+      @Override
+      public void onPause() {
+      }
+
+      @Override
+      public void onViewReady() {
+      }
+    };
+    presenter.subscribe("items", 1, subject, new Observer<String>() {
+      @Override
+      public void onCompleted() {
+      }
+
+      @Override
+      public void onError(Throwable e) {
+      }
+
+      @Override
+      public void onNext(String item) {
+        order.add(item);
+      }
+    });
+    subject.onNext("a");
+
+    //no service involved, the presenter attaches its own subscriptions
+    presenter.takeView(mock(MVPView.class));
+    subject.onNext("b");
+    presenter.dropView();
+    subject.onNext("c");
+
+    Assert.assertEquals(Arrays.asList("a", "onTakeView", "b", "onDropView"), order);
+  }
+}
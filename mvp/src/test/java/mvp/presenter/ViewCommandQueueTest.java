@@ -0,0 +1,223 @@
+package mvp.presenter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mvp.MVPView;
+
+import static org.mockito.Mockito.mock;
+
+public class ViewCommandQueueTest {
+
+  ViewCommandQueue<MVPView> queue;
+  List<String> applied;
+
+  @Before
+  public void setup() {
+    queue = new ViewCommandQueue<>();
+    applied = new ArrayList<>();
+  }
+
+  @Test
+  public void testPost_attached_appliedNow() {
+    queue.attach(mock(MVPView.class));
+
+    queue.post("title", command("a"));
+
+    Assert.assertEquals(1, applied.size());
+    Assert.assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testPost_detached_appliedOnAttach() {
+    queue.post("title", command("a"));
+    Assert.assertTrue(applied.isEmpty());
+
+    queue.attach(mock(MVPView.class));
+
+    Assert.assertEquals("a", applied.get(0));
+    Assert.assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testPost_sameKeyWhileDetached_onlyLatestApplied() {
+    queue.post("list", command("list 1"));
+    queue.post("title", command("title"));
+    queue.post("list", command("list 2"));
+
+    queue.attach(mock(MVPView.class));
+
+    Assert.assertEquals(2, applied.size());
+    Assert.assertEquals("title", applied.get(0));
+    Assert.assertEquals("list 2", applied.get(1));
+  }
+
+  @Test
+  public void testPost_noKey_allKept() {
+    queue.post(null, command("toast 1"));
+    queue.post(null, command("toast 2"));
+
+    queue.attach(mock(MVPView.class));
+
+    Assert.assertEquals(2, applied.size());
+  }
+
+  @Test
+  public void testDetach_postsQueuedAgain() {
+    MVPView view = mock(MVPView.class);
+    queue.attach(view);
+    queue.detach();
+
+    queue.post("title", command("a"));
+
+    Assert.assertTrue(applied.isEmpty());
+    Assert.assertEquals(1, queue.size());
+  }
+
+  @Test
+  public void testClear_nothingApplied() {
+    queue.post("title", command("a"));
+    queue.clear();
+
+    queue.attach(mock(MVPView.class));
+
+    Assert.assertTrue(applied.isEmpty());
+  }
+
+  @Test
+  public void testFrameTicker_attached_appliedOnTickCoalesced() {
+    ManualFrameTicker ticker = new ManualFrameTicker();
+    queue.setFrameTicker(ticker);
+    queue.attach(mock(MVPView.class));
+
+    queue.post("progress", command("10%"));
+    queue.post("progress", command("20%"));
+    queue.post("title", command("title"));
+    Assert.assertTrue(applied.isEmpty());
+    Assert.assertEquals(1, ticker.ticks.size());
+    ticker.tick();
+
+    Assert.assertEquals(2, applied.size());
+    Assert.assertEquals("20%", applied.get(0));
+    Assert.assertEquals("title", applied.get(1));
+  }
+
+  @Test
+  public void testFrameTicker_atMostOneBatchPerTick() {
+    ManualFrameTicker ticker = new ManualFrameTicker();
+    queue.setFrameTicker(ticker);
+    queue.attach(mock(MVPView.class));
+
+    for (int i = 0; i < 100; i++) {
+      queue.post("progress", command("step " + i));
+    }
+    ticker.tick();
+    queue.post("progress", command("next frame"));
+
+    Assert.assertEquals(1, applied.size());
+    Assert.assertEquals("step 99", applied.get(0));
+    Assert.assertEquals(1, ticker.ticks.size());
+  }
+
+  @Test
+  public void testFrameTicker_tickWhileDetached_keptForNextView() {
+    ManualFrameTicker ticker = new ManualFrameTicker();
+    queue.setFrameTicker(ticker);
+    queue.attach(mock(MVPView.class));
+    queue.post("title", command("a"));
+
+    queue.detach();
+    ticker.tick();
+    Assert.assertTrue(applied.isEmpty());
+    queue.attach(mock(MVPView.class));
+
+    Assert.assertEquals("a", applied.get(0));
+  }
+
+  @Test
+  public void testFrameTicker_removed_pendingAppliedNow() {
+    ManualFrameTicker ticker = new ManualFrameTicker();
+    queue.setFrameTicker(ticker);
+    queue.attach(mock(MVPView.class));
+    queue.post("title", command("a"));
+
+    queue.setFrameTicker(null);
+
+    Assert.assertEquals("a", applied.get(0));
+  }
+
+  @Test
+  public void testAbstractPresenter_updatesWhileDetached_appliedBeforeOnTakeView() {
+    final List<String> order = new ArrayList<>();
+    AbstractPresenter<MVPView> presenter = new AbstractPresenter<MVPView>() {
+      @Override
+      public void onDropView() {
+      }
+
+      @Override
+      public void onTakeView() {
+        order.add("onTakeView");
+      }
+
+      @Override
+      public void destroy() {
+      }
+
+      @Override
+      public void onResume() {
+      }
+
+      @Override
+      public void onPause() {
+      }
+
+      @Override
+      public void onViewReady() {
+      }
+    };
+    presenter.takeView(mock(MVPView.class));
+    presenter.dropView();
+
+    presenter.withView("title", new ViewCommand<MVPView>() {
+      @Override
+      public void apply(MVPView view) {
+        order.add("title");
+      }
+    });
+    Assert.assertEquals(1, order.size());
+    presenter.takeView(mock(MVPView.class));
+
+    Assert.assertEquals("title", order.get(1));
+    Assert.assertEquals("onTakeView", order.get(2));
+  }
+
+  static class ManualFrameTicker implements FrameTicker {
+    List<Runnable> ticks = new ArrayList<>();
+
+    @Override
+    public void postTick(Runnable tick) {
+      ticks.add(tick);
+    }
+
+    void tick() {
+      List<Runnable> due = new ArrayList<>(ticks);
+      ticks.clear();
+      for (Runnable tick : due) {
+        tick.run();
+      }
+    }
+  }
+
+  private ViewCommand<MVPView> command(final String name) {
+    return new ViewCommand<MVPView>() {
+      @Override
+      public void apply(MVPView view) {
+        applied.add(name);
+      }
+    };
+  }
+}
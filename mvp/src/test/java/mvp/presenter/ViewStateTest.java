@@ -0,0 +1,132 @@
+package mvp.presenter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mvp.MVPView;
+
+import static org.mockito.Mockito.mock;
+
+public class ViewStateTest {
+
+  StatePresenter presenter;
+  List<String> calls;
+
+  @Before
+  public void setup() {
+    presenter = new StatePresenter();
+    calls = new ArrayList<>();
+  }
+
+  @Test
+  public void testSetViewState_attached_onlyChangedFieldsSet() {
+    MVPView view = mock(MVPView.class);
+    presenter.takeView(view);
+
+    presenter.setViewState(new State("home", 1), new Differ());
+    presenter.setViewState(new State("home", 2), new Differ());
+    presenter.setViewState(new State("home", 2), new Differ());
+
+    Assert.assertEquals(Arrays.asList("title home", "count 1", "count 2"), calls);
+  }
+
+  @Test
+  public void testTakeView_newView_givenWholeState() {
+    presenter.takeView(mock(MVPView.class));
+    presenter.setViewState(new State("home", 1), new Differ());
+    presenter.dropView();
+    calls.clear();
+
+    presenter.takeView(mock(MVPView.class));
+
+    Assert.assertEquals(Arrays.asList("title home", "count 1"), calls);
+  }
+
+  @Test
+  public void testSetViewState_detached_latestAppliedOnceToNextView() {
+    presenter.takeView(mock(MVPView.class));
+    presenter.setViewState(new State("home", 1), new Differ());
+    presenter.dropView();
+    calls.clear();
+
+    presenter.setViewState(new State("home", 2), new Differ());
+    presenter.setViewState(new State("detail", 3), new Differ());
+    Assert.assertTrue(calls.isEmpty());
+    presenter.takeView(mock(MVPView.class));
+
+    Assert.assertEquals(Arrays.asList("title detail", "count 3"), calls);
+  }
+
+  @Test
+  public void testSetViewState_frameTicker_diffedAgainstLastRendered() {
+    ViewCommandQueueTest.ManualFrameTicker ticker = new ViewCommandQueueTest.ManualFrameTicker();
+    presenter.setFrameTicker(ticker);
+    presenter.takeView(mock(MVPView.class));
+    presenter.setViewState(new State("home", 1), new Differ());
+    ticker.tick();
+    calls.clear();
+
+    presenter.setViewState(new State("home", 2), new Differ());
+    presenter.setViewState(new State("home", 3), new Differ());
+    presenter.setViewState(new State("home", 1), new Differ());
+    ticker.tick();
+
+    Assert.assertTrue(calls.isEmpty());
+  }
+
+  static class State {
+    final String title;
+    final int count;
+
+    State(String title, int count) {
+      this.title = title;
+      this.count = count;
+    }
+  }
+
+  /**
+   * What the processor generates for a @ViewState
+   */
+  class Differ implements ViewStateDiffer<State, MVPView> {
+    @Override
+    public void apply(State previous, State next, MVPView view) {
+      if (previous == null || !previous.title.equals(next.title)) {
+        calls.add("title " + next.title);
+      }
+      if (previous == null || previous.count != next.count) {
+        calls.add("count " + next.count);
+      }
+    }
+  }
+
+  static class StatePresenter extends AbstractPresenter<MVPView> {
+    @Override
+    public void onDropView() {
+    }
+
+    @Override
+    public void onTakeView() {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public void onResume() {
+    }
+
+    @Override
+    public void onPause() {
+    }
+
+    @Override
+    public void onViewReady() {
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package mvp.presenter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import mvp.MVPView;
+
+public class ViewTypeIndexTest {
+
+  interface HomeView extends MVPView {
+  }
+
+  interface DetailView extends MVPView {
+  }
+
+  interface TabletHomeView extends HomeView {
+  }
+
+  abstract static class HomeActivity implements HomeView {
+  }
+
+  abstract static class TabletHomeActivity implements TabletHomeView {
+  }
+
+  abstract static class SplitActivity implements HomeView, DetailView {
+  }
+
+  @Test
+  public void testIndexOf_implementingClass_found() {
+    ViewTypeIndex index = new ViewTypeIndex(DetailView.class, HomeView.class);
+
+    Assert.assertEquals(1, index.indexOf(HomeActivity.class));
+    Assert.assertEquals(1, index.indexOf(HomeActivity.class));
+  }
+
+  @Test
+  public void testIndexOf_unknown_notFound() {
+    ViewTypeIndex index = new ViewTypeIndex(HomeView.class);
+
+    Assert.assertEquals(ViewTypeIndex.NOT_FOUND, index.indexOf(DetailView.class));
+  }
+
+  @Test
+  public void testIndexOf_mostSpecificWinsWhateverTheOrder() {
+    Assert.assertEquals(1, new ViewTypeIndex(HomeView.class, TabletHomeView.class).indexOf(TabletHomeActivity.class));
+    Assert.assertEquals(0, new ViewTypeIndex(TabletHomeView.class, HomeView.class).indexOf(TabletHomeActivity.class));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testIndexOf_unrelatedMatches_exception() {
+    new ViewTypeIndex(HomeView.class, DetailView.class).indexOf(SplitActivity.class);
+  }
+}